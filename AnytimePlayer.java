@@ -0,0 +1,91 @@
+package iota;
+
+import java.util.ArrayList;
+
+/**
+ * A player that is told how long it has to make its move, and that publishes
+ * the best move it has found so far as it goes. If the player has not
+ * answered by the deadline, the manager plays the last move it published
+ * rather than treating the turn as a pass. A player that searches deeper and
+ * deeper, or samples more and more, can so use all the time it is given
+ * without the risk of losing its turn.
+ */
+public abstract class AnytimePlayer extends Player {
+
+    /**
+     * A published move and the turn it was published for.
+     */
+    private static final class Published {
+
+        final long turn;
+        final ArrayList<PlayedCard> move;
+
+        Published(long turn, ArrayList<PlayedCard> move) {
+            this.turn = turn;
+            this.move = move;
+        }
+    }
+
+    // The turns are numbered from 1, and changed only by the manager.
+    private volatile long turn;
+    private volatile Published published;
+
+    public AnytimePlayer(Manager m) {
+        super(m);
+    }
+
+    /**
+     * Make a move by the given deadline, publishing better moves as they
+     * are found. The move returned is the one played if it comes in time.
+     *
+     * @param deadline when the move is wanted by
+     * @return the move you intend to make
+     */
+    public abstract ArrayList<PlayedCard> makeMove(Deadline deadline);
+
+    /**
+     * Make a move with no deadline.
+     *
+     * @return the move you intend to make
+     */
+    @Override
+    public final ArrayList<PlayedCard> makeMove() {
+        return makeMove(Deadline.none());
+    }
+
+    /**
+     * Offer a move to play if time runs out. Each move published replaces
+     * the one before, so it should be the best found so far. A move is
+     * published for the turn of the deadline it was found under, and is
+     * ignored if that turn is over, as it may be when a search overruns.
+     * It may be called from any thread.
+     *
+     * @param deadline the deadline given for the turn
+     * @param move the move
+     */
+    protected final void publish(Deadline deadline, ArrayList<PlayedCard> move) {
+        if (deadline.turn() == turn) {
+            published = new Published(deadline.turn(), new ArrayList<>(move));
+        }
+    }
+
+    /**
+     * Start a new turn, forgetting the move published in the last one.
+     *
+     * @return the number of the turn, to give with its deadline
+     */
+    long startTurn() {
+        published = null;
+        return ++turn;
+    }
+
+    /**
+     * The last move published this turn.
+     *
+     * @return the move, or null if none has been published
+     */
+    ArrayList<PlayedCard> published() {
+        Published p = published;
+        return p != null && p.turn == turn ? p.move : null;
+    }
+}
@@ -0,0 +1,120 @@
+package iota;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A log writer that hands events to a background thread through a fixed ring
+ * buffer. Writing an event only stores it in the ring; the background thread
+ * takes everything waiting at once, formats the messages and writes them out
+ * with one flush for the whole batch. If the ring is full the event is
+ * dropped and counted rather than making the game wait.
+ */
+public final class AsyncLogWriter implements GameLog.Writer {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final GameLog.Event[] events;
+    private final String[] subjects;
+    private final int mask;
+    // Guarded by this. Events head (inclusive) to tail (exclusive) are
+    // waiting; written counts those the background thread has flushed.
+    private long head;
+    private long tail;
+    private long written;
+    private long dropped;
+
+    private final Writer out;
+    private final Thread thread;
+
+    /**
+     * Make a writer and start its thread.
+     *
+     * @param stream where to write the messages
+     * @param capacity the number of events the ring holds, rounded up to a
+     * power of two
+     */
+    public AsyncLogWriter(OutputStream stream, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        events = new GameLog.Event[size];
+        subjects = new String[size];
+        mask = size - 1;
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        thread = new Thread(this::drain, "iota-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void write(GameLog.Event event, String subject) {
+        if (tail - head > mask) {
+            dropped++;
+            return;
+        }
+        int i = (int) tail & mask;
+        events[i] = event;
+        subjects[i] = subject;
+        if (tail++ == head) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until every event written so far has been written out, or the
+     * background thread has stopped.
+     */
+    @Override
+    public synchronized void flush() {
+        long target = tail;
+        while (written < target && thread.isAlive()) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    private void drain() {
+        GameLog.Event[] batchEvents = new GameLog.Event[events.length];
+        String[] batchSubjects = new String[events.length];
+        try {
+            while (true) {
+                int n;
+                synchronized (this) {
+                    while (head == tail) {
+                        wait();
+                    }
+                    n = (int) (tail - head);
+                    for (int k = 0; k < n; k++) {
+                        int i = (int) (head + k) & mask;
+                        batchEvents[k] = events[i];
+                        batchSubjects[k] = subjects[i];
+                        subjects[i] = null;
+                    }
+                    head = tail;
+                }
+                for (int k = 0; k < n; k++) {
+                    out.write(batchEvents[k].message(batchSubjects[k]));
+                    out.write(System.lineSeparator());
+                }
+                out.flush();
+                synchronized (this) {
+                    written += n;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException | IOException e) {
+            // Stop logging; the game goes on regardless.
+        }
+    }
+}
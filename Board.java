@@ -0,0 +1,336 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An Iota board indexed by position. Cards are kept in an open-addressing
+ * table keyed on the packed (x,y) coordinate so that looking up the card at a
+ * position takes constant time, however many cards have been played. The cards
+ * are also kept in the order they were played, and the empty positions next
+ * to at least one card (the frontier, where any move must touch) are kept up
+ * to date as cards are added. So is a summary of the maximal run of cards in
+ * the row and the column through each card, so the block a card belongs to
+ * can be found without walking along it.
+ */
+public class Board implements BoardView, Iterable<PlayedCard> {
+
+    private static final int INITIAL_CAPACITY = 128;
+
+    private long[] keys;
+    private PlayedCard[] values;
+    private Run[] rowRuns;
+    private Run[] columnRuns;
+    private int[] order;
+    private int mask;
+    private long cardBits;
+    private long key;
+    private final ArrayList<PlayedCard> played = new ArrayList<>();
+    private LongSet frontier = new LongSet();
+
+    public Board() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private Board(int capacity) {
+        keys = new long[capacity];
+        values = new PlayedCard[capacity];
+        rowRuns = new Run[capacity];
+        columnRuns = new Run[capacity];
+        order = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Index an existing list of played cards. This is the adapter used by the
+     * methods that still take an ArrayList of played cards.
+     *
+     * @param cards the cards, in the order they were played
+     * @return a board containing the cards
+     */
+    public static Board of(List<PlayedCard> cards) {
+        Board b = new Board(capacityFor(cards.size()));
+        b.addAll(cards);
+        return b;
+    }
+
+    /**
+     * Index a list of played cards that may not be a proper board.
+     *
+     * @param cards the cards, in the order they were played
+     * @return a board containing the cards, or null if two of them are in
+     * the same place
+     */
+    static Board ofDistinct(List<PlayedCard> cards) {
+        Board b = new Board(capacityFor(cards.size()));
+        for (PlayedCard c : cards) {
+            if (!b.isEmpty(c.x, c.y)) {
+                return null;
+            }
+            b.add(c);
+        }
+        return b;
+    }
+
+    private static int capacityFor(int cards) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * cards) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Pack a position into a single long.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed position
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int xOf(long position) {
+        return (int) (position >> 32);
+    }
+
+    public static int yOf(long position) {
+        return (int) position;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Return the card at the given position.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the card at (x,y) or null if there is none
+     */
+    @Override
+    public PlayedCard cardAt(int x, int y) {
+        int i = slot(pack(x, y));
+        return i < 0 ? null : values[i];
+    }
+
+    // The table index holding the given position, or -1 if it is empty.
+    private int slot(long key) {
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * The maximal run of cards in the row through the given position.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the run, or null if the position is empty
+     */
+    public Run rowRun(int x, int y) {
+        int i = slot(pack(x, y));
+        return i < 0 ? null : rowRuns[i];
+    }
+
+    /**
+     * The maximal run of cards in the column through the given position.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the run, or null if the position is empty
+     */
+    public Run columnRun(int x, int y) {
+        int i = slot(pack(x, y));
+        return i < 0 ? null : columnRuns[i];
+    }
+
+    /**
+     * When the card at the given position was played.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the index of the card in the order of play, or -1 if the
+     * position is empty
+     */
+    public int indexAt(int x, int y) {
+        int i = slot(pack(x, y));
+        return i < 0 ? -1 : order[i];
+    }
+
+    public boolean isEmpty(int x, int y) {
+        return cardAt(x, y) == null;
+    }
+
+    /**
+     * Place a card on the board. No checking of legality is done, but the
+     * position must be empty.
+     *
+     * @param card the card to place
+     */
+    public void add(PlayedCard card) {
+        if (2 * (played.size() + 1) > keys.length) {
+            grow();
+        }
+        long key = pack(card.x, card.y);
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                throw new IllegalArgumentException("Position already occupied: " + card);
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = card;
+        order[i] = played.size();
+        cardBits |= CardSet.bit(card.card);
+        this.key ^= Zobrist.card(card);
+        played.add(card);
+
+        // The runs either side of the card join up through it.
+        Run row = Run.join(rowRun(card.x - 1, card.y), card, rowRun(card.x + 1, card.y), true);
+        for (int k = 0; k < row.length; k++) {
+            rowRuns[slot(pack(row.x + k, row.y))] = row;
+        }
+        Run column = Run.join(columnRun(card.x, card.y - 1), card, columnRun(card.x, card.y + 1), false);
+        for (int k = 0; k < column.length; k++) {
+            columnRuns[slot(pack(column.x, column.y + k))] = column;
+        }
+
+        frontier.remove(key);
+        addToFrontier(card.x + 1, card.y);
+        addToFrontier(card.x - 1, card.y);
+        addToFrontier(card.x, card.y + 1);
+        addToFrontier(card.x, card.y - 1);
+    }
+
+    private void addToFrontier(int x, int y) {
+        if (isEmpty(x, y)) {
+            frontier.add(pack(x, y));
+        }
+    }
+
+    public void addAll(List<PlayedCard> cards) {
+        for (PlayedCard c : cards) {
+            add(c);
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        PlayedCard[] oldValues = values;
+        Run[] oldRows = rowRuns;
+        Run[] oldColumns = columnRuns;
+        int[] oldOrder = order;
+        keys = new long[oldKeys.length << 1];
+        values = new PlayedCard[oldValues.length << 1];
+        rowRuns = new Run[keys.length];
+        columnRuns = new Run[keys.length];
+        order = new int[keys.length];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                rowRuns[i] = oldRows[j];
+                columnRuns[i] = oldColumns[j];
+                order[i] = oldOrder[j];
+            }
+        }
+    }
+
+    /**
+     * Make an independent copy of this board.
+     *
+     * @return the copy
+     */
+    public Board copy() {
+        Board b = new Board(keys.length);
+        System.arraycopy(keys, 0, b.keys, 0, keys.length);
+        System.arraycopy(values, 0, b.values, 0, values.length);
+        System.arraycopy(rowRuns, 0, b.rowRuns, 0, rowRuns.length);
+        System.arraycopy(columnRuns, 0, b.columnRuns, 0, columnRuns.length);
+        System.arraycopy(order, 0, b.order, 0, order.length);
+        b.cardBits = cardBits;
+        b.key = key;
+        b.played.addAll(played);
+        b.frontier = frontier.copy();
+        return b;
+    }
+
+    /**
+     * The cards that have been played, regardless of position.
+     *
+     * @return the set of cards on the board
+     */
+    public CardSet cards() {
+        return CardSet.ofBits(cardBits);
+    }
+
+    /**
+     * The empty positions next to at least one card. Each position appears
+     * once, however many cards it is next to.
+     *
+     * @return a new array of the packed frontier positions
+     */
+    public long[] frontier() {
+        return frontier.toArray();
+    }
+
+    public int frontierSize() {
+        return frontier.size();
+    }
+
+    public boolean isFrontier(int x, int y) {
+        return frontier.contains(pack(x, y));
+    }
+
+    public long cardBits() {
+        return cardBits;
+    }
+
+    /**
+     * The Zobrist key of the board, which depends only on which cards are
+     * where and not on the order they were played.
+     *
+     * @return the key
+     */
+    public long key() {
+        return key;
+    }
+
+    public int size() {
+        return played.size();
+    }
+
+    /**
+     * The cards on the board in the order they were played.
+     *
+     * @return an unmodifiable view of the played cards
+     */
+    public List<PlayedCard> asList() {
+        return Collections.unmodifiableList(played);
+    }
+
+    @Override
+    public Iterator<PlayedCard> iterator() {
+        return asList().iterator();
+    }
+
+}
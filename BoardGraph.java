@@ -1,245 +1,338 @@
 package iota;
 
-import java.util.HashSet;
 import java.util.ArrayList;
-
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A spot graph of the board which is kept across turns. New cards are fed in
+ * as they are played, and only the spots around them are touched, so the
+ * cost of a turn depends on how much the board changed rather than on its
+ * size. Spots are kept in a sparse grid and only created around played
+ * cards, so the board may grow in any direction.
+ */
 public class BoardGraph {
 
-	private static final int SIZE = 65;
+	private SparseGrid<Spot> matrix;
+
+	private Board board;
+	private MoveSet allMoves;
+
+	// If not null, move generation and scoring are split over this pool.
+	private ForkJoinPool pool;
+	private int threshold = MoveGenerator.DEFAULT_THRESHOLD;
 
-	private Spot[][] matrix;
+	public BoardGraph() {
 
-	private ArrayList<ArrayList<Spot>> availableMoves;
-	private HashSet<ArrayList<PlayedCard>> allMoves;
+		this.allMoves 		= new MoveSet();
+		this.board 			= new Board();
+		this.matrix 		= new SparseGrid<Spot>();
+	}
 
 	public BoardGraph(Player p, ArrayList<PlayedCard> cards, ArrayList<Card> hand) {
+		this(p, Board.of(cards), hand);
+	}
 
-		this.allMoves 		= new HashSet<ArrayList<PlayedCard>>();
-		this.availableMoves = new ArrayList<ArrayList<Spot>>();
-		this.matrix 		= new Spot[SIZE][SIZE];
+	public BoardGraph(Player p, Board cards, ArrayList<Card> hand) {
+		this();
+		addCards(cards.asList());
 
-		// initialize all spots in adjacency matrix.
-		for (int col = 0; col < SIZE; col++) {
-			for (int row = 0; row < SIZE; row++) {
-				matrix[col][row] = new Spot(indexToCoord(row), indexToCoord(col));
+		// find all possible moves.
+		computeAvailableMoves(hand, Deadline.none());
+	}
+
+	/**
+	* Brings the graph up to date with the given board, which should be the
+	* full board in the order the cards were played. Only the cards played
+	* since the last call are added. If the board does not start with the
+	* cards already seen (i.e., a new game has started) the graph is reset;
+	* this is checked on the Zobrist key of those cards, so a new game is
+	* found however much of it is the same as the old one.
+	*/
+	public void sync(List<PlayedCard> cards) {
+		int known = board.size();
+		if (cards.size() < known || Zobrist.board(cards.subList(0, known)) != board.key()) {
+			reset();
+			known = 0;
+		}
+		addCards(cards.subList(known, cards.size()));
+	}
+
+	/**
+	* Adds newly played cards to the graph, creating the spots around them.
+	* The board keeps track of which of those spots are on the frontier.
+	*/
+	public void addCards(List<PlayedCard> newCards) {
+		for (PlayedCard card : newCards) {
+			board.add(card);
+			Spot spot = addToMatrix(card);
+
+			// make sure all the neighbouring spots exist.
+			north(spot);
+			south(spot);
+			west(spot);
+			east(spot);
+
+			// only the spots at the ends of the card's row and column see a change.
+			updateEnds(card.x, card.y, 1, 0);
+			updateEnds(card.x, card.y, 0, 1);
+		}
+	}
+
+	/**
+	* Recomputes the masks of the empty spots at each end of the run of cards
+	* through (x, y) in direction (dx, dy).
+	*/
+	private void updateEnds(int x, int y, int dx, int dy) {
+		Run run = dx == 1 ? board.rowRun(x, y) : board.columnRun(x, y);
+		Spot before = spotAt(run.x - dx, run.y - dy);
+		Spot after = spotAt(run.x + run.length * dx, run.y + run.length * dy);
+		if (dx == 1) {
+			before.rowCards = lineCards(before.x, before.y, 1, 0);
+			after.rowCards = lineCards(after.x, after.y, 1, 0);
+		} else {
+			before.columnCards = lineCards(before.x, before.y, 0, 1);
+			after.columnCards = lineCards(after.x, after.y, 0, 1);
+		}
+	}
+
+	/**
+	* The cards which would make a set with the cards on either side of (x, y)
+	* in direction (dx, dy).
+	*/
+	private long lineCards(int x, int y, int dx, int dy) {
+		Run before = dx == 1 ? board.rowRun(x - 1, y) : board.columnRun(x, y - 1);
+		Run after = dx == 1 ? board.rowRun(x + 1, y) : board.columnRun(x, y + 1);
+		int count = 0;
+		int colours = 0, shapes = 0, values = 0;
+		for (Run run : new Run[] {before, after}) {
+			if (run != null) {
+				count += run.length;
+				colours |= run.colours;
+				shapes |= run.shapes;
+				values |= run.values;
 			}
 		}
+		return LineTable.extensions(count, colours, shapes, values);
+	}
+
+	/**
+	* The cards which would make a set with the cards either side of (x, y) in
+	* its row. Spots with no cards next to them allow every card.
+	*/
+	public long rowCards(int x, int y) {
+		Spot spot = matrix.get(x, y);
+		return spot == null ? -1L : spot.rowCards;
+	}
+
+	/**
+	* The cards which would make a set with the cards either side of (x, y) in
+	* its column.
+	*/
+	public long columnCards(int x, int y) {
+		Spot spot = matrix.get(x, y);
+		return spot == null ? -1L : spot.columnCards;
+	}
 
-		// assign all played cards into matrix.
-		for (PlayedCard card : cards) {
-			addToMatrix(card);
-		} 
-
-		// assign all existing neighbours.
-		for (int col = 1; col < SIZE-1; col++) {
-			for (int row = 1; row < SIZE-1; row++) {
-					Spot n = matrix[col-1][row];
-					Spot s = matrix[col+1][row];
-					Spot w = matrix[col][row-1];
-					Spot e = matrix[col][row+1]; 
-					matrix[col][row].assignNeighbours(n, s, w, e);
+	/**
+	* Returns the single card moves for the hand: at each frontier spot these
+	* are just the hand cards allowed by both its row and column.
+	*/
+	public MoveSet singleCardMoves(CardSet hand) {
+		MoveSet moves = new MoveSet();
+		int[] id = new int[1];
+		int[] x = new int[1];
+		int[] y = new int[1];
+		for (long position : board.frontier()) {
+			Spot spot = matrix.get(Board.xOf(position), Board.yOf(position));
+			long cards = hand.bits() & ~board.cardBits() & spot.legalCards();
+			while (cards != 0L) {
+				id[0] = Long.numberOfTrailingZeros(cards);
+				x[0] = spot.x;
+				y[0] = spot.y;
+				moves.add(Move.of(id, x, y, 1));
+				cards &= cards - 1;
 			}
 		}
+		return moves;
+	}
 
-		// find all possible moves.
-		computeAvailableMoves(p, cards, hand);
+	/**
+	* Clears all played cards from the graph so it can be reused for a new game.
+	*/
+	public void reset() {
+		matrix.clear();
+		board = new Board();
+		allMoves = new MoveSet();
+	}
+
+	/**
+	* The board as currently known to the graph.
+	*/
+	public Board getBoard() {
+		return board;
 	}
 
-	private void addToMatrix(PlayedCard card){
+	private Spot addToMatrix(PlayedCard card){
 		int x, y;
 		x = card.x;
 		y = card.y;
 
 		// sets a played card in the matrix.
-		matrix[coordToIndex(y)][coordToIndex(x)].setCard(card);
+		Spot spot = spotAt(x, y);
+		spot.setCard(card);
+		return spot;
 	}
-	
+
 	/**
-	* Uses given state of board, and passed hand. Computes available moves,
-	* and stores it in availableMoves.
+	* Returns the spot at the given coordinates, creating it (and linking it
+	* to any existing neighbours) if it has not been needed before.
 	*/
-	private void computeAvailableMoves(Player p, ArrayList<PlayedCard> board, ArrayList<Card> hand) {
-		
-		int max = 0;
-
-		// for all played cards on the board.
-		for (PlayedCard c : board) {
-			int x = c.x;
-			int y = c.y;
+	private Spot spotAt(int x, int y) {
+		Spot spot = matrix.get(x, y);
+		if (spot == null) {
+			spot = new Spot(x, y);
+			matrix.put(x, y, spot);
+			spot.rowCards = lineCards(x, y, 1, 0);
+			spot.columnCards = lineCards(x, y, 0, 1);
+
+			Spot n = matrix.get(x, y-1);
+			Spot s = matrix.get(x, y+1);
+			Spot w = matrix.get(x-1, y);
+			Spot e = matrix.get(x+1, y);
+			spot.assignNeighbours(n, s, w, e);
+			if (n != null) n.s = spot;
+			if (s != null) s.n = spot;
+			if (w != null) w.e = spot;
+			if (e != null) e.w = spot;
+		}
+		return spot;
+	}
 
-			Spot s = matrix[coordToIndex(y)][coordToIndex(x)];
-			ArrayList<Spot> neighbours = s.getNeighbours();
+	private Spot north(Spot spot) {
+		return spot.n != null ? spot.n : spotAt(spot.x, spot.y-1);
+	}
 
-			// for all neighbours of the played card, try place a card in neighbouring space.
-			for (Spot neighbour : neighbours) {
+	private Spot south(Spot spot) {
+		return spot.s != null ? spot.s : spotAt(spot.x, spot.y+1);
+	}
 
-				int nx = neighbour.x;
-				int ny = neighbour.y;
+	private Spot west(Spot spot) {
+		return spot.w != null ? spot.w : spotAt(spot.x-1, spot.y);
+	}
 
-				// permute through all possible combinations in hand.
-				for(Card hc : hand) {
-					
-					ArrayList<Card> remainingCards = (ArrayList<Card>) hand.clone();
-					remainingCards.remove(hc);
+	private Spot east(Spot spot) {
+		return spot.e != null ? spot.e : spotAt(spot.x+1, spot.y);
+	}
 
-					ArrayList<PlayedCard> possibleMoveSet = new ArrayList<PlayedCard>();
-					possibleMoveSet.add(new PlayedCard(hc, p, nx, ny));
-					
-					if(Utilities.isLegalMove(possibleMoveSet, board)) {
+	/**
+	* Computes the moves available from the given hand on the current board.
+	*/
+	public MoveSet computeMoves(ArrayList<Card> hand) {
+		return computeMoves(hand, Deadline.none());
+	}
 
-						ArrayList<PlayedCard> newPossibleMoveSet = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-						allMoves.add(newPossibleMoveSet);
-						search(remainingCards, neighbour, possibleMoveSet, board, p);
-					}
-				}
-			}
-		}
+	/**
+	* Computes the moves available from the given hand on the current board,
+	* giving those found by the deadline if it passes first.
+	*/
+	public MoveSet computeMoves(ArrayList<Card> hand, Deadline deadline) {
+		computeAvailableMoves(hand, deadline);
+		return allMoves;
 	}
 	
-	private void search(ArrayList<Card> remainingHandCards, Spot recentlyPlayedSpot, ArrayList<PlayedCard> possibleMoveSet, ArrayList<PlayedCard> board, Player p) {
-
-		if(remainingHandCards.size() != 0) {
-			// search the north spot of the played card.
-			ArrayList<PlayedCard> possibleSubsetsN = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-			searchN(remainingHandCards, recentlyPlayedSpot.n, possibleSubsetsN, board, p);
-
-			// search the south spot of the played card.
-			ArrayList<PlayedCard> possibleSubsetsS = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-			searchS(remainingHandCards, recentlyPlayedSpot.s, possibleSubsetsS, board, p);
-			
-			// search the east spot of the played card.
-			ArrayList<PlayedCard> possibleSubsetsE = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-			searchE(remainingHandCards, recentlyPlayedSpot.e, possibleSubsetsE, board, p);
-
-			// search the west spot of the played card.
-			ArrayList<PlayedCard> possibleSubsetsW = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-			searchW(remainingHandCards, recentlyPlayedSpot.w, possibleSubsetsW, board, p);
-		}
+	/**
+	* Uses given state of board, and passed hand. Computes available moves,
+	* and stores it in allMoves.
+	*/
+	private void computeAvailableMoves(ArrayList<Card> hand, Deadline deadline) {
+
+		// the empty spots next to a played card are the anchors for moves.
+		long[] anchors = board.frontier();
+		allMoves = generator(deadline).generate(anchors, anchors.length, hand);
 	}
 
-	/**
-	*	For all remaining cards in hard, recursively search and determine 
-		if we can play cards in a row given a first valid card placement in the north direction.
-	*/
-	private void searchN(ArrayList<Card> remainingHandCards, Spot recentlyPlayedSpot, ArrayList<PlayedCard> possibleMoveSet,  ArrayList<PlayedCard> board, Player p) {
-		
-		for(Card c : remainingHandCards) {
-
-			int x = recentlyPlayedSpot.x;
-			int y = recentlyPlayedSpot.y; 
-			
-			PlayedCard newCard = new PlayedCard(c, p, x, y);
-			
-			possibleMoveSet.add(newCard);
-			if (Utilities.isLegalMove(possibleMoveSet, board)) {
-			
-				ArrayList<Card> newRemainingCards = (ArrayList<Card>) remainingHandCards.clone();
-				ArrayList<PlayedCard> newPossibleMoveSet = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-				newRemainingCards.remove(c);
-			
-				allMoves.add(newPossibleMoveSet);
-			
-				searchN(newRemainingCards, recentlyPlayedSpot.n, newPossibleMoveSet, board, p);
-			} 
-			possibleMoveSet.remove(newCard);
+	private MoveGenerator generator() {
+		return generator(Deadline.none());
+	}
+
+	private MoveGenerator generator(Deadline deadline) {
+		MoveGenerator generator = new MoveGenerator(this);
+		if (pool != null) {
+			generator.setParallel(pool, threshold);
 		}
+		generator.setDeadline(deadline);
+		return generator;
 	}
 
 	/**
-	*	For all remaining cards in hard, recursively search and determine 
-		if we can play cards in a row given a first valid card placement in the south direction.
-	*/
-	private void searchS(ArrayList<Card> remainingHandCards, Spot recentlyPlayedSpot, ArrayList<PlayedCard> possibleMoveSet,  ArrayList<PlayedCard> board, Player p) {
-		
-		for(Card c : remainingHandCards) {
-			int x = recentlyPlayedSpot.x;
-			int y = recentlyPlayedSpot.y; 
-			PlayedCard newCard = new PlayedCard(c, p, x, y);
-			possibleMoveSet.add(newCard);
-			if (Utilities.isLegalMove(possibleMoveSet, board)) {
-				ArrayList<Card> newRemainingCards = (ArrayList<Card>) remainingHandCards.clone();
-				ArrayList<PlayedCard> newPossibleMoveSet = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-				newRemainingCards.remove(c);
-				allMoves.add(newPossibleMoveSet);
-				searchN(newRemainingCards, recentlyPlayedSpot.s, newPossibleMoveSet, board, p);
-			} 
-			possibleMoveSet.remove(newCard);
-		}
+	* Splits move generation and scoring over the given pool whenever there
+	* are more than threshold start positions or moves. The moves found and
+	* their order are the same as with no pool.
+	*/
+	public void setParallel(ForkJoinPool pool, int threshold) {
+		this.pool = pool;
+		this.threshold = threshold;
 	}
 
 	/**
-	*	For all remaining cards in hard, recursively search and determine 
-		if we can play cards in a row given a first valid card placement in the east direction.
-	*/
-	private void searchE(ArrayList<Card> remainingHandCards, Spot recentlyPlayedSpot, ArrayList<PlayedCard> possibleMoveSet,  ArrayList<PlayedCard> board, Player p) {
-		
-		for(Card c : remainingHandCards) {
-			int x = recentlyPlayedSpot.x;
-			int y = recentlyPlayedSpot.y; 
-			PlayedCard newCard = new PlayedCard(c, p, x, y);
-			possibleMoveSet.add(newCard);
-			if (Utilities.isLegalMove(possibleMoveSet, board)) {
-				ArrayList<Card> newRemainingCards = (ArrayList<Card>) remainingHandCards.clone();
-				ArrayList<PlayedCard> newPossibleMoveSet = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-				newRemainingCards.remove(c);
-				allMoves.add(newPossibleMoveSet);
-				searchN(newRemainingCards, recentlyPlayedSpot.e, newPossibleMoveSet, board, p);
-			} 
-			possibleMoveSet.remove(newCard);
-		}
+	* Finds the k best moves for the hand on the current board, best first,
+	* without generating the moves which cannot be among them.
+	*/
+	public List<Move> bestMoves(ArrayList<Card> hand, int k) {
+		long[] anchors = board.frontier();
+		return generator().best(anchors, anchors.length, hand, k);
 	}
 
 	/**
-	*	For all remaining cards in hard, recursively search and determine 
-		if we can play cards in a row given a first valid card placement in the west direction.
-	*/
-	private void searchW(ArrayList<Card> remainingHandCards, Spot recentlyPlayedSpot, ArrayList<PlayedCard> possibleMoveSet,  ArrayList<PlayedCard> board, Player p) {
-		
-		for(Card c : remainingHandCards) {
-			int x = recentlyPlayedSpot.x;
-			int y = recentlyPlayedSpot.y; 
-			PlayedCard newCard = new PlayedCard(c, p, x, y);
-			possibleMoveSet.add(newCard);
-			if (Utilities.isLegalMove(possibleMoveSet, board)) {
-				ArrayList<Card> newRemainingCards = (ArrayList<Card>) remainingHandCards.clone();
-				ArrayList<PlayedCard> newPossibleMoveSet = (ArrayList<PlayedCard>) possibleMoveSet.clone();
-				newRemainingCards.remove(c);
-				allMoves.add(newPossibleMoveSet);
-				searchN(newRemainingCards, recentlyPlayedSpot.w, newPossibleMoveSet, board, p);
-			} 
-			possibleMoveSet.remove(newCard);
-		}
+	* Gives each legal move for the hand on the current board to the sink
+	* as it is found, leaving out those below the sink's threshold.
+	*/
+	public void searchMoves(ArrayList<Card> hand, MoveGenerator.Sink sink) {
+		long[] anchors = board.frontier();
+		generator().search(anchors, anchors.length, hand, sink);
 	}
 
 	/**
-	* Converts coordinate system to index.
+	* Scores each of the moves on the current board, in the order of the set.
 	*/
-	private int coordToIndex(int coord) { 
-		return (SIZE/2)+coord; 
+	public int[] scoreMoves(MoveSet moves) {
+		return generator().score(moves);
 	}
-	
+
 	/**
-	* Converts index to coordinate system.
+	* Scores each of the moves on the current board, giving the sink the best
+	* of each batch as it is scored, and stopping at the deadline. Moves not
+	* scored by then score ILLEGAL. The sink may be called from pool threads.
 	*/
-	private int indexToCoord(int index) { 
-		return index-(SIZE/2); 
+	public int[] scoreMoves(MoveSet moves, MoveGenerator.Sink sink, Deadline deadline) {
+		return generator(deadline).score(moves, sink);
 	}
 
 	/**
 	* Returns all valid moves given the current state of the board and hand.
 	*/
-	public HashSet<ArrayList<PlayedCard>> getAvailableMoves() {
+	public MoveSet getAvailableMoves() {
 
 
 		return allMoves;
 	}
 
 	public void printMatrix(){
+		int xMin = Integer.MAX_VALUE;
+		int yMin = Integer.MAX_VALUE;
+		int xMax = Integer.MIN_VALUE;
+		int yMax = Integer.MIN_VALUE;
+		for (PlayedCard c : board) {
+			xMin = Math.min(xMin, c.x);
+			xMax = Math.max(xMax, c.x);
+			yMin = Math.min(yMin, c.y);
+			yMax = Math.max(yMax, c.y);
+		}
 		/* Matrix prints left to right then descends.*/
-		for(int cols = 0; cols < matrix.length; cols++){
-			//System.out.print(matrix[i][i]);
-			for(int rows = 0; rows < matrix.length; rows++){
-				if(matrix[cols][rows].isEmpty()){
+		for(int y = yMin; y <= yMax; y++){
+			for(int x = xMin; x <= xMax; x++){
+				if(board.isEmpty(x, y)){
 					System.out.printf("%4d", 0);
 				} else {
 					System.out.printf("%4d", 1);
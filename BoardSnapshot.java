@@ -0,0 +1,134 @@
+package iota;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A read-only view of a board as it was when the snapshot was taken. Cards
+ * are only ever added to a board, never moved or removed, and played cards
+ * cannot be changed, so a snapshot is just the board and the number of cards
+ * it held. Taking one costs nothing, however big the board, and cards played
+ * since are hidden from it.
+ * <p>
+ * The version of a snapshot is the number of cards on the board, so of two
+ * snapshots of the same game the later one has the higher version, and a
+ * player that has seen version v need only look at the cards from index v on.
+ * <p>
+ * A snapshot should be read on the thread that plays the game, or once the
+ * cards it holds are known to have been published to the reading thread.
+ * <p>
+ * While no card has been played since it was taken, a snapshot is current,
+ * and a player can check moves and find the frontier through it using the
+ * manager's own index of the board.
+ */
+public final class BoardSnapshot implements BoardView, Iterable<PlayedCard> {
+
+    private final Board board;
+    private final int size;
+    private final List<PlayedCard> cards = new AbstractList<PlayedCard>() {
+
+        @Override
+        public PlayedCard get(int index) {
+            return BoardSnapshot.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    BoardSnapshot(Board board) {
+        this.board = board;
+        this.size = board.size();
+    }
+
+    public int getVersion() {
+        return size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The card played at the given point of the game.
+     *
+     * @param index the index of the card in the order of play
+     * @return the card
+     */
+    public PlayedCard get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return board.asList().get(index);
+    }
+
+    @Override
+    public PlayedCard cardAt(int x, int y) {
+        int index = board.indexAt(x, y);
+        return index >= 0 && index < size ? board.asList().get(index) : null;
+    }
+
+    public boolean isEmpty(int x, int y) {
+        return cardAt(x, y) == null;
+    }
+
+    /**
+     * Whether no card has been played since the snapshot was taken.
+     *
+     * @return true if the snapshot is of the board as it is now
+     */
+    public boolean isCurrent() {
+        return board.size() == size;
+    }
+
+    private void checkCurrent() {
+        if (!isCurrent()) {
+            throw new IllegalStateException("Board has moved on from version " + size + " to " + board.size());
+        }
+    }
+
+    /**
+     * Check and score a move on the board. The snapshot must be current.
+     *
+     * @param cards the cards played
+     * @return the result of the play
+     */
+    public MoveResult evaluate(ArrayList<PlayedCard> cards) {
+        checkCurrent();
+        return Utilities.evaluate(cards, board);
+    }
+
+    /**
+     * The empty positions next to at least one card. The snapshot must be
+     * current.
+     *
+     * @return a new array of the packed frontier positions
+     */
+    public long[] frontier() {
+        checkCurrent();
+        return board.frontier();
+    }
+
+    /**
+     * The cards of the snapshot in the order they were played.
+     *
+     * @return an unmodifiable list view of the cards
+     */
+    public List<PlayedCard> asList() {
+        return cards;
+    }
+
+    @Override
+    public Iterator<PlayedCard> iterator() {
+        return cards.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "board version " + size;
+    }
+}
@@ -0,0 +1,17 @@
+package iota;
+
+/**
+ * Read only access to the cards on a board by position.
+ */
+public interface BoardView {
+
+    /**
+     * Return the card at the given position.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the card at (x,y) or null if there is none
+     */
+    PlayedCard cardAt(int x, int y);
+
+}
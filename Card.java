@@ -1,43 +1,81 @@
 package iota;
 
 /**
- * An Iota card.
+ * An Iota card. There are only 64 different cards and each is created once,
+ * so cards are obtained through {@link #of(Colour, Shape, int)} or
+ * {@link #fromId(int)} and can be compared by identity.
  *
  * @author Michael Albert
  */
 public class Card {
 
-    Colour colour;
-    Shape shape;
-    int value;
+    private static final Card[] CARDS = new Card[64];
 
-    public Card(Colour colour, Shape shape, int value) {
+    static {
+        for (Colour c : Colour.values()) {
+            for (Shape s : Shape.values()) {
+                for (int v = 1; v <= 4; v++) {
+                    Card card = new Card(c, s, v);
+                    CARDS[card.id()] = card;
+                }
+            }
+        }
+    }
+
+    final Colour colour;
+    final Shape shape;
+    final int value;
+
+    private Card(Colour colour, Shape shape, int value) {
         this.colour = colour;
         this.shape = shape;
         this.value = value;
     }
 
+    /**
+     * Return the card with the given attributes.
+     *
+     * @param colour the colour
+     * @param shape the shape
+     * @param value the value, between 1 and 4
+     * @return the card
+     */
+    public static Card of(Colour colour, Shape shape, int value) {
+        if (value < 1 || value > 4) {
+            throw new IllegalArgumentException("Card values are between 1 and 4: " + value);
+        }
+        return CARDS[(colour.ordinal() << 4) + (shape.ordinal() << 2) + value - 1];
+    }
+
+    /**
+     * Recover a card from its id.
+     *
+     * @param id the id, between 0 and 63
+     * @return the card with that id
+     */
+    public static Card fromId(int id) {
+        return CARDS[id];
+    }
+
     @Override
     public int hashCode() {
         return (colour.ordinal() << 4) + (shape.ordinal() << 2) + value;
     }
 
+    /**
+     * A compact id for the card. There are only 64 different cards, so this is
+     * just the hash code shifted down to lie between 0 and 63.
+     *
+     * @return the id of the card
+     */
+    public int id() {
+        return hashCode() - 1;
+    }
+
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) {
-            return false;
-        }
-        if (getClass() != obj.getClass()) {
-            return false;
-        }
-        final Card other = (Card) obj;
-        if (this.colour != other.colour) {
-            return false;
-        }
-        if (this.shape != other.shape) {
-            return false;
-        }
-        return this.value == other.value;
+        // Cards are interned, so equal cards are the same object.
+        return this == obj;
     }
 
     public String toString() {
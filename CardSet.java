@@ -0,0 +1,142 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of Iota cards. As there are only 64 cards, the set is a
+ * single long with bit i set when the card with id i is present, so set
+ * operations are single bitwise operations.
+ */
+public final class CardSet implements Iterable<Card> {
+
+    public static final CardSet EMPTY = new CardSet(0L);
+    public static final CardSet ALL = new CardSet(-1L);
+
+    private final long bits;
+
+    private CardSet(long bits) {
+        this.bits = bits;
+    }
+
+    public static CardSet ofBits(long bits) {
+        return bits == 0L ? EMPTY : new CardSet(bits);
+    }
+
+    public static CardSet of(Collection<Card> cards) {
+        long b = 0L;
+        for (Card c : cards) {
+            b |= bit(c);
+        }
+        return ofBits(b);
+    }
+
+    /**
+     * The bit representing a single card.
+     *
+     * @param c the card
+     * @return the mask containing only c
+     */
+    public static long bit(Card c) {
+        return 1L << c.id();
+    }
+
+    public long bits() {
+        return bits;
+    }
+
+    public boolean contains(Card c) {
+        return (bits & bit(c)) != 0;
+    }
+
+    public boolean containsAll(CardSet other) {
+        return (other.bits & ~bits) == 0;
+    }
+
+    public boolean intersects(CardSet other) {
+        return (other.bits & bits) != 0;
+    }
+
+    public CardSet with(Card c) {
+        return ofBits(bits | bit(c));
+    }
+
+    public CardSet without(Card c) {
+        return ofBits(bits & ~bit(c));
+    }
+
+    public CardSet union(CardSet other) {
+        return ofBits(bits | other.bits);
+    }
+
+    public CardSet minus(CardSet other) {
+        return ofBits(bits & ~other.bits);
+    }
+
+    public CardSet intersect(CardSet other) {
+        return ofBits(bits & other.bits);
+    }
+
+    public int size() {
+        return Long.bitCount(bits);
+    }
+
+    public boolean isEmpty() {
+        return bits == 0L;
+    }
+
+    /**
+     * The cards in the set, in order of id.
+     *
+     * @return a new list of the cards
+     */
+    public ArrayList<Card> toList() {
+        ArrayList<Card> result = new ArrayList<>(size());
+        for (Card c : this) {
+            result.add(c);
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Card> iterator() {
+        return new Iterator<Card>() {
+            private long remaining = bits;
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0L;
+            }
+
+            @Override
+            public Card next() {
+                if (remaining == 0L) {
+                    throw new NoSuchElementException();
+                }
+                int id = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return Card.fromId(id);
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(bits);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CardSet)) {
+            return false;
+        }
+        return this.bits == ((CardSet) obj).bits;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
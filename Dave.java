@@ -14,32 +14,17 @@ public class Dave extends Player{
 
     @Override
     public ArrayList<PlayedCard> makeMove() {
-        int minX=1000;
-        int maxX=-1000;
-        int minY=1000;
-        int maxY=-1000;
-        ArrayList<PlayedCard> board = m.getBoard();
-        for (PlayedCard pc: board) {
-            if (pc.x < minX)
-                minX = pc.x;
-            if (pc.x > maxX)
-                maxX = pc.x;
-            if (pc.y < minY)
-                minY = pc.y;
-            if (pc.y > maxY)
-                maxY = pc.y;
-        }
+        BoardSnapshot board = m.getSnapshot();
+        long[] frontier = board.frontier();
         for (Card card: m.getHand(this)){
-            for (int i = minX-1; i< maxX+1;i++){
-                for (int j = minY-1; j < maxY+1; j++) {
-                    ArrayList<PlayedCard> move = new ArrayList<>();
-                    move.add(new PlayedCard(card, this, i, j));
-                    if (Utilities.isLegalMove(move, board))
-                        return move;
-                }
+            for (long position: frontier){
+                ArrayList<PlayedCard> move = new ArrayList<>();
+                move.add(new PlayedCard(card, this, Board.xOf(position), Board.yOf(position)));
+                if (board.evaluate(move).isLegal())
+                    return move;
             }
         }
-        return Player.PASS;
+        return Player.pass();
     }
 
     @Override
@@ -0,0 +1,89 @@
+package iota;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which a player must have answered, measured on the clock of
+ * System.nanoTime. A deadline may also be no deadline at all, in which case
+ * it never expires and checking it does not read the clock.
+ * <p>
+ * The deadline the manager gives an anytime player also names the turn it
+ * is for, so that a move published late for an earlier turn is not taken
+ * for one of this turn.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(0L, false, 0L);
+
+    private final long at;
+    private final boolean limited;
+    private final long turn;
+
+    private Deadline(long at, boolean limited, long turn) {
+        this.at = at;
+        this.limited = limited;
+        this.turn = turn;
+    }
+
+    /**
+     * The deadline that falls at the given reading of System.nanoTime.
+     *
+     * @param nanoTime the time
+     * @return the deadline
+     */
+    static Deadline at(long nanoTime) {
+        return at(nanoTime, 0L);
+    }
+
+    /**
+     * The deadline of a turn, falling at the given reading of
+     * System.nanoTime.
+     *
+     * @param nanoTime the time
+     * @param turn the turn, as numbered by the player
+     * @return the deadline
+     */
+    static Deadline at(long nanoTime, long turn) {
+        return new Deadline(nanoTime, true, turn);
+    }
+
+    public static Deadline after(long time, TimeUnit unit) {
+        return at(System.nanoTime() + unit.toNanos(time));
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    // The turn the deadline is for, or 0 if it is for none.
+    long turn() {
+        return turn;
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public boolean isExpired() {
+        return limited && at - System.nanoTime() <= 0;
+    }
+
+    /**
+     * The time left before the deadline.
+     *
+     * @param unit the unit wanted
+     * @return the time left, 0 once expired, or Long.MAX_VALUE if there is no
+     * deadline
+     */
+    public long remaining(TimeUnit unit) {
+        if (!limited) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0L, at - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return limited ? "deadline in " + remaining(TimeUnit.MILLISECONDS) + " ms" : "no deadline";
+    }
+}
@@ -4,6 +4,8 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * A pre-shuffled deck of Iota cards which keeps track of the next card and allows
@@ -14,20 +16,52 @@ import java.util.Collections;
 public class Deck {
 
     private ArrayDeque<Card> deck = new ArrayDeque<>();
+    private CardSet remaining = CardSet.EMPTY;
+    private long key;
 
 
     public Deck() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * A deck shuffled by a generator with the given seed, so the same seed
+     * always gives the same order.
+     *
+     * @param seed the seed
+     */
+    public Deck(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    public Deck(SplittableRandom random) {
         ArrayList<Card> d = new ArrayList<Card>();
         int i = 0;
         for (Colour c : Colour.values()) {
             for (Shape s : Shape.values()) {
                 for (int v = 1; v <= 4; v++) {
-                    d.add(new Card(c, s, v));
+                    d.add(Card.of(c, s, v));
                 }
             }
         }
-        Collections.shuffle(d);
+        shuffle(d, random);
         this.deck.addAll(d);
+        this.remaining = CardSet.ALL;
+        this.key = Zobrist.deck(CardSet.ALL.bits());
+    }
+
+    /**
+     * Shuffle a list in place (Fisher-Yates). Unlike Collections.shuffle the
+     * generator is given, so the order depends only on its seed.
+     *
+     * @param list the list to shuffle
+     * @param random the generator
+     * @param <T> the type of the elements
+     */
+    public static <T> void shuffle(List<T> list, SplittableRandom random) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, random.nextInt(i + 1));
+        }
     }
 
     public static void main(String[] args) {
@@ -40,13 +74,43 @@ public class Deck {
     }
 
     public Card dealCard() {
-        return deck.poll();
+        Card c = deck.poll();
+        if (c != null) {
+            remaining = remaining.without(c);
+            key ^= Zobrist.deck(c.id());
+        }
+        return c;
+    }
+
+    /**
+     * The cards still in the deck, regardless of order.
+     *
+     * @return the set of cards in the deck
+     */
+    public CardSet remaining() {
+        return remaining;
+    }
+
+    public int size() {
+        return deck.size();
     }
 
     void addCards(Collection<Card> cards) {
         for (Card c : cards) {
             deck.addLast(c);
         }
+        CardSet added = CardSet.of(cards);
+        key ^= Zobrist.deck(added.minus(remaining).bits());
+        remaining = remaining.union(added);
+    }
+
+    /**
+     * The Zobrist key of the cards still in the deck, regardless of order.
+     *
+     * @return the key
+     */
+    public long key() {
+        return key;
     }
 
 }
@@ -7,8 +7,15 @@ class DisplayPanel extends JPanel {
 
     Manager manager;
 
+    static final int MARGIN = 2;
+
     int height;
     int width;
+    // Board coordinates of the top left corner, in cards.
+    private int xOrigin;
+    private int yOrigin;
+    // The number of cards of the current game the canvas has been fitted to.
+    private int fitted;
 
     public DisplayPanel(Manager m, int width, int height) {
         this.manager = m;
@@ -16,6 +23,8 @@ class DisplayPanel extends JPanel {
         setBackground(Color.WHITE);
         this.width = width;
         this.height = height;
+        this.xOrigin = width / PlayedCard.SIZE / 2;
+        this.yOrigin = height / PlayedCard.SIZE / 2;
     }
 
     @Override
@@ -23,13 +32,58 @@ class DisplayPanel extends JPanel {
         return new Dimension(width, height);
     }
 
+    /**
+     * The pixel position of the top left corner of the card at (0,0).
+     *
+     * @return the position on the canvas
+     */
+    public Point originPixel() {
+        return new Point(xOrigin * PlayedCard.SIZE, yOrigin * PlayedCard.SIZE);
+    }
+
+    /**
+     * Fit the canvas to the board and repaint it. Call this whenever cards
+     * have been played or a new game has been set up.
+     */
+    public void boardChanged() {
+        fitBoard(manager.getSnapshot());
+        repaint();
+    }
+
+    // Grows the canvas (never shrinks it) so the whole board fits. Only the
+    // cards played since the last fit need looking at.
+    private void fitBoard(BoardSnapshot board) {
+        if (board.size() < fitted) {
+            fitted = 0;
+        }
+        int xMin = 0, xMax = 0, yMin = 0, yMax = 0;
+        for (PlayedCard card : board.asList().subList(fitted, board.size())) {
+            xMin = Math.min(xMin, card.x);
+            xMax = Math.max(xMax, card.x);
+            yMin = Math.min(yMin, card.y);
+            yMax = Math.max(yMax, card.y);
+        }
+        int newXOrigin = Math.max(xOrigin, MARGIN - xMin);
+        int newYOrigin = Math.max(yOrigin, MARGIN - yMin);
+        int newWidth = Math.max(width + (newXOrigin - xOrigin) * PlayedCard.SIZE, (newXOrigin + xMax + 1 + MARGIN) * PlayedCard.SIZE);
+        int newHeight = Math.max(height + (newYOrigin - yOrigin) * PlayedCard.SIZE, (newYOrigin + yMax + 1 + MARGIN) * PlayedCard.SIZE);
+        if (newWidth != width || newHeight != height) {
+            xOrigin = newXOrigin;
+            yOrigin = newYOrigin;
+            width = newWidth;
+            height = newHeight;
+            revalidate();
+        }
+        fitted = board.size();
+    }
+
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
 
         for (PlayedCard card :
-                manager.getBoard()) {
-            card.drawCard(g, 34);
+                manager.getSnapshot()) {
+            card.drawCard(g, xOrigin, yOrigin);
         }
 
         if (manager.gameOver) {
@@ -1,15 +1,18 @@
 package iota;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
-public class FalveyPlayer extends Player {
+public class FalveyPlayer extends AnytimePlayer {
 	
     private String name;
 
-	private ArrayList<PlayedCard> boardCopy;
+	private Board boardCopy;
 	private ArrayList<Card> hand;
+	private BoardGraph graph = new BoardGraph(); // kept across turns.
+	private boolean parallel = false;
+	private TranspositionTable table; // may be shared with other players.
+	private int bestScore; // of the move found by the last search.
 
 	public FalveyPlayer(Manager m, String name) {
 		
@@ -17,6 +20,28 @@ public class FalveyPlayer extends Player {
         this.name = name;
 	}
 
+	/**
+	* A player which splits its move generation and scoring over the given
+	* pool. It plays exactly the same moves as one without.
+	*/
+	/**
+	* A player which keeps the result of each search in the given table, and
+	* plays the move found before rather than searching again when it meets
+	* a position it, or another player sharing the table, has searched.
+	*/
+	public FalveyPlayer(Manager m, String name, TranspositionTable table) {
+
+		this(m, name);
+		this.table = table;
+	}
+
+	public FalveyPlayer(Manager m, String name, ForkJoinPool pool) {
+
+		this(m, name);
+		graph.setParallel(pool, MoveGenerator.DEFAULT_THRESHOLD);
+		parallel = true;
+	}
+
 	/**
      * Make a move as requested by the manager. Note that as a player you
      * will be able to query the manager about the current state of the board
@@ -25,62 +50,147 @@ public class FalveyPlayer extends Player {
      * If the move returned is invalid, you will be deemed to have passed 
      * (i.e., done nothing).
      * 
+     * The search publishes each better move it finds and stops at the
+     * deadline with the best so far.
+     * 
+     * @param deadline when the move is wanted by.
      * @return The move you intend to make.
      * 
      */
-    public ArrayList<PlayedCard> makeMove() {
+    public ArrayList<PlayedCard> makeMove(Deadline deadline) {
 
         hand = m.getHand(this);   // obtain new hand.
-        boardCopy = m.getBoard(); // get current state of the board.
-
-        BoardGraph b = new BoardGraph(this, boardCopy, hand); // generate state representation.
-        HashSet<ArrayList<PlayedCard>> moves = b.getAvailableMoves();
-        HashSet<ArrayList<PlayedCard>> copyOfMoves = (HashSet<ArrayList<PlayedCard>>) moves.clone();
-        ArrayList<PlayedCard> bestMove = new ArrayList<PlayedCard>();
-        int maxScore = 0;
+        graph.sync(m.getSnapshot().asList()); // bring state representation up to date.
+        boardCopy = graph.getBoard();
+
+        long key = m.getPositionKey(this);
+        TranspositionTable.Entry known = table == null ? null : lookUp(key);
+        Move bestMove;
+        if (known != null && known.getBound() == TranspositionTable.Bound.EXACT) {
+            bestMove = known.getMove();
+        } else {
+            bestMove = parallel ? bestOfAll(deadline) : bestBySearch(deadline, known);
+            // a search cut short by the deadline only gives a lower bound.
+            boolean complete = !deadline.isExpired();
+            if (table != null && (bestMove != null || complete)) {
+                table.store(key, bestMove, bestScore, 1,
+                        complete ? TranspositionTable.Bound.EXACT : TranspositionTable.Bound.LOWER);
+            }
+        }
 
-        if(moves.size() == 0) {
-            
-            System.out.println("Hand Discarded");
+        if(bestMove == null) {
+            m.getLog().log(GameLog.Event.NO_MOVE, name);
             return new ArrayList<PlayedCard>();
         }
+        return bestMove.toPlayedCards(this);
+    }
 
-        for(ArrayList<PlayedCard> move : moves) {
+    /**
+     * Looks the position up in the table, starting a new search of it. A
+     * result is only used if its move can still be played, as a key can
+     * stand for more than one position.
+     *
+     * @return the result stored for the position, or null.
+     */
+    private TranspositionTable.Entry lookUp(long key) {
 
-            int score = Utilities.scoreForMove(move, boardCopy);
-         //   System.out.println(move);
-            if(score > maxScore) {
-                maxScore = score;
-                bestMove = move;
-            } 
+        table.newSearch();
+        TranspositionTable.Entry known = table.probe(key);
+        if (known == null || known.getMove() == null) {
+            return known;
+        }
+        Move move = known.getMove();
+        if ((CardSet.of(hand).bits() & move.cardBits()) != move.cardBits()
+                || Utilities.evaluate(move, boardCopy).getScore() != known.getScore()) {
+            return null;
         }
+        return known;
+    }
 
-        for(ArrayList<PlayedCard> moveOne : copyOfMoves) {
+    /**
+     * Finds the best move by searching, skipping any placements which could
+     * not beat the best move found so far, or the move known from an earlier
+     * search cut short. If the deadline passes first, gives the best move
+     * found by then.
+     *
+     * @return the best move, or null if there are no legal moves.
+     */
+    private Move bestBySearch(Deadline deadline, TranspositionTable.Entry known) {
 
-            for(ArrayList<PlayedCard> moveTwo : copyOfMoves) {
-                ArrayList<PlayedCard> combinedMove = new ArrayList<PlayedCard>();
+        BestSoFar best = new BestSoFar(deadline);
+        if (known != null && known.getMove() != null) {
+            best.accept(known.getMove(), known.getScore());
+        }
+        graph.searchMoves(hand, best);
+        bestScore = best.score;
+        return best.move;
+    }
 
-                combinedMove.addAll(moveOne);
-                combinedMove.addAll(moveTwo);
+	/**
+	* Keeps the best move the search has found, publishing each one when
+	* there is a deadline, and cuts the search off once it has passed. Moves
+	* may come from the threads of a pool when scoring in parallel.
+	*/
+	private final class BestSoFar implements MoveGenerator.Sink {
+
+		private final Deadline deadline;
+		// accept() may be called from pool threads at once, so it locks, and
+		// what threshold() reads without locking is volatile. Two calls may
+		// count as one, which only puts off reading the clock a little.
+		private volatile Move move;
+		private volatile int score = Integer.MIN_VALUE;
+		private volatile int calls;
+		private volatile boolean stopped;
+
+		BestSoFar(Deadline deadline) {
+			this.deadline = deadline;
+		}
+
+		@Override
+		public synchronized void accept(Move move, int score) {
+			if (score > this.score) {
+				this.move = move;
+				this.score = score;
+				if (deadline.isLimited()) {
+					publish(deadline, move.toPlayedCards(FalveyPlayer.this));
+				}
+			}
+		}
+
+		@Override
+		public int threshold() {
+			// the clock is only read now and then, as the search asks often.
+			if (!stopped && (++calls & 63) == 0 && deadline.isExpired()) {
+				stopped = true;
+			}
+			return stopped ? Integer.MAX_VALUE : score;
+		}
+	}
 
-                int score = Utilities.scoreForMove(combinedMove, boardCopy);
+    /**
+     * Finds the best move by generating and scoring every move, which can be
+     * split over a pool. Gives the same move as bestBySearch(). The best move
+     * scored so far is published as the work goes on, and if the deadline
+     * passes first, gives the best move scored by then.
+     *
+     * @return the best move, or null if there are no legal moves.
+     */
+    private Move bestOfAll(Deadline deadline) {
 
-                if(score != -1) {
-                    moves.add(combinedMove);
-                }
-            }
-        }
+        MoveSet moves = graph.computeMoves(hand, deadline);
+        Move bestMove = null;
+        int maxScore = 0;
 
-        for(ArrayList<PlayedCard> move : moves) {
+        int[] scores = graph.scoreMoves(moves, new BestSoFar(deadline), deadline);
+        for(int i = 0; i < scores.length; i++) {
 
-            int score = Utilities.scoreForMove(move, boardCopy);
-         //   System.out.println(move);
-            if(score > maxScore) {
-                maxScore = score;
-                bestMove = move;
+            if(scores[i] > maxScore) {
+                maxScore = scores[i];
+                bestMove = moves.get(i);
             } 
         }
-        return bestMove; // return all available moves.
+        bestScore = maxScore;
+        return bestMove;
     }
 
     /**
@@ -0,0 +1,76 @@
+package iota;
+
+import java.util.List;
+
+/**
+ * Receives the events of the games run by a manager, in the order they
+ * happen. Between them the events describe the whole game, so a listener can
+ * keep its own copy of the state up to date without asking the manager for
+ * the board or the hands. Every method does nothing by default; a listener
+ * overrides those it wants.
+ * <p>
+ * Events are delivered on the thread playing the game, before the manager
+ * goes on, so a listener should return quickly.
+ */
+public interface GameListener {
+
+    /**
+     * A new game has been set up. The deal of the first hands and the card
+     * the board starts with follow.
+     *
+     * @param m the manager
+     * @param seed the seed of the game
+     * @param players the players in the order they play
+     */
+    default void gameStarted(Manager m, long seed, List<Player> players) {
+    }
+
+    /**
+     * Cards have been dealt from the deck into a player's hand.
+     *
+     * @param p the player
+     * @param cards the cards dealt
+     */
+    default void cardsDealt(Player p, CardSet cards) {
+    }
+
+    /**
+     * A card has been placed on the board. The card the board starts with
+     * has no player.
+     *
+     * @param card the card placed
+     * @param version the version of the board with the card on it
+     */
+    default void cardPlaced(PlayedCard card, int version) {
+    }
+
+    /**
+     * A player has put cards from their hand back into the deck. They go to
+     * the bottom of the deck in the order given, so the order matters to a
+     * listener following the deck.
+     *
+     * @param p the player
+     * @param cards the cards discarded, in the order they went into the deck
+     */
+    default void cardsDiscarded(Player p, List<Card> cards) {
+    }
+
+    /**
+     * A player has scored for a move, after the cards of the move have been
+     * placed.
+     *
+     * @param p the player
+     * @param points the points scored by the move
+     * @param total the player's score after the move
+     */
+    default void scoreChanged(Player p, int points, int total) {
+    }
+
+    /**
+     * The game is over.
+     *
+     * @param winners the players with the highest score
+     */
+    default void gameOver(List<Player> winners) {
+    }
+}
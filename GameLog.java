@@ -0,0 +1,216 @@
+package iota;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The log of what happens in games: players joining, discards, illegal moves,
+ * the end of a game and its winner. Every event is counted, whatever the
+ * level, so a long run keeps the totals without writing anything. Events at
+ * or above the level of the log are also passed to its writer, as the event
+ * and the name it is about; turning them into text is left to the writer, so
+ * an event that is only counted costs no more than an increment.
+ * <p>
+ * A log can be shared by the managers of many games on many threads.
+ */
+public final class GameLog {
+
+    public enum Level {
+        DEBUG, INFO, WARN, OFF
+    }
+
+    /**
+     * The kinds of event, each with its level and the message written for
+     * it. The message has one %s, for the subject, if the event has one.
+     */
+    public enum Event {
+        PLAYER_JOINED(Level.INFO, "%s"),
+        MOVE(Level.DEBUG, "%s played"),
+        DISCARD(Level.DEBUG, "%s discarded"),
+        NO_MOVE(Level.DEBUG, "%s found no move and discards"),
+        BAD_DISCARD(Level.WARN, "Some cards are not in %s's hand. Failed to Discard"),
+        BAD_CARDS(Level.WARN, "Some cards are not in %s's hand. Failed to play"),
+        ILLEGAL_MOVE(Level.WARN, "%s tried to play an illegal move."),
+        TIMEOUT(Level.WARN, "%s ran out of time."),
+        LATE_MOVE(Level.DEBUG, "%s ran out of time and played its best move so far."),
+        GAME_BLOCKED(Level.INFO, "Game over"),
+        WIN(Level.INFO, "Winner is %s."),
+        DRAW(Level.INFO, "Draw between players %s."),
+        RECORD_DROPPED(Level.WARN, "Game not recorded: %s");
+
+        public final Level level;
+        private final String format;
+
+        Event(Level level, String format) {
+            this.level = level;
+            this.format = format;
+        }
+
+        public String message(String subject) {
+            return subject == null ? format : String.format(format, subject);
+        }
+    }
+
+    /**
+     * Where the events that pass the level of a log go.
+     */
+    public interface Writer {
+
+        /**
+         * Write an event. This is called on the thread playing the game, so it
+         * should not block.
+         *
+         * @param event the event
+         * @param subject what the event is about, usually a player's name, or
+         * null
+         */
+        void write(Event event, String subject);
+
+        /**
+         * Wait until everything written so far is out.
+         */
+        default void flush() {
+        }
+    }
+
+    private static final Writer NOWHERE = (event, subject) -> {
+    };
+
+    /**
+     * The console's writer. Players joining go to standard output on the
+     * calling thread, after whatever is still waiting for standard error, so
+     * the names come out where they always have. Everything else is passed
+     * on to the asynchronous writer.
+     */
+    private static final class ConsoleWriter implements Writer {
+
+        private final AsyncLogWriter errors;
+
+        ConsoleWriter(AsyncLogWriter errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public void write(Event event, String subject) {
+            if (event == Event.PLAYER_JOINED) {
+                errors.flush();
+                System.out.println(event.message(subject));
+            } else {
+                errors.write(event, subject);
+            }
+        }
+
+        @Override
+        public void flush() {
+            errors.flush();
+            System.out.flush();
+        }
+    }
+
+    private static volatile GameLog console;
+
+    private final Level level;
+    private final Writer writer;
+    private final AtomicLongArray counts = new AtomicLongArray(Event.values().length);
+
+    public GameLog(Level level, Writer writer) {
+        this.level = level;
+        this.writer = writer;
+    }
+
+    /**
+     * The log games use unless given another: events of level INFO and
+     * above. Players joining are printed to standard output as they happen;
+     * the rest are written to standard error from a background thread. There
+     * is one for the whole program.
+     *
+     * @return the console log
+     */
+    public static GameLog console() {
+        GameLog log = console;
+        if (log == null) {
+            synchronized (GameLog.class) {
+                log = console;
+                if (log == null) {
+                    ConsoleWriter writer = new ConsoleWriter(new AsyncLogWriter(System.err, AsyncLogWriter.DEFAULT_CAPACITY));
+                    Runtime.getRuntime().addShutdownHook(new Thread(writer::flush));
+                    log = console = new GameLog(Level.INFO, writer);
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * A log that writes nothing and only counts, as used when playing
+     * tournaments.
+     *
+     * @return a new silent log
+     */
+    public static GameLog silent() {
+        return new GameLog(Level.OFF, NOWHERE);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Whether events of the given kind are written, so that a caller can
+     * skip building a subject that would not be used.
+     *
+     * @param event the kind of event
+     * @return true if the event passes the level of the log
+     */
+    public boolean isWritten(Event event) {
+        return event.level.compareTo(level) >= 0;
+    }
+
+    /**
+     * Count an event and write it if it passes the level of the log.
+     *
+     * @param event the event
+     * @param subject what it is about, or null
+     */
+    public void log(Event event, String subject) {
+        counts.incrementAndGet(event.ordinal());
+        if (isWritten(event)) {
+            writer.write(event, subject);
+        }
+    }
+
+    public void log(Event event) {
+        log(event, null);
+    }
+
+    public long count(Event event) {
+        return counts.get(event.ordinal());
+    }
+
+    /**
+     * The number of times each kind of event has happened, leaving out those
+     * that have not.
+     *
+     * @return the counts, in the order of the events
+     */
+    public Map<Event, Long> counts() {
+        Map<Event, Long> result = new EnumMap<>(Event.class);
+        for (Event e : Event.values()) {
+            long n = count(e);
+            if (n > 0) {
+                result.put(e, n);
+            }
+        }
+        return result;
+    }
+
+    public void flush() {
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "log at " + level + " " + counts();
+    }
+}
@@ -0,0 +1,327 @@
+package iota;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The record of a game: its seed, the players in the order they played, the
+ * card the board started with, and each turn in which something happened.
+ * The deal follows from the seed and the discards, which are kept in the
+ * order they went back into the deck, and passes change nothing, so these
+ * are enough to follow the game through.
+ * <p>
+ * The binary form is:
+ * <pre>
+ *   seed            8 bytes
+ *   players         1 byte, then each name as a varint length and UTF-8
+ *   start card      1 byte, the id of the card at (0,0)
+ *   turns           varint count, then each turn:
+ *     tag           1 byte: seat in bits 0-2, number of cards in bits 3-5,
+ *                   bit 6 set for a discard
+ *     move          for each card its id, then x and y as zigzag varints,
+ *                   then the points scored as a varint
+ *     discard       the id of each card, in the order they went back
+ *                   into the deck
+ * </pre>
+ * A move of one card at a small position takes five bytes.
+ */
+public final class GameRecord {
+
+    private static final int MAX_SEATS = 8;
+    private static final int DISCARD = 1 << 6;
+
+    /**
+     * One turn of a game: a move or a discard.
+     */
+    public static final class Turn {
+
+        private final int seat;
+        private final boolean discard;
+        private final int[] cards;
+        private final int[] xs;
+        private final int[] ys;
+        private final int points;
+
+        private Turn(int seat, boolean discard, int[] cards, int[] xs, int[] ys, int points) {
+            if (seat < 0 || seat >= MAX_SEATS) {
+                throw new IllegalArgumentException("Seat out of range: " + seat);
+            }
+            if (cards.length > 4) {
+                throw new IllegalArgumentException("Too many cards for a turn: " + cards.length);
+            }
+            this.seat = seat;
+            this.discard = discard;
+            this.cards = cards;
+            this.xs = xs;
+            this.ys = ys;
+            this.points = points;
+        }
+
+        /**
+         * A move placing the given cards.
+         *
+         * @param seat the seat of the player
+         * @param cards the cards placed
+         * @param points the points scored
+         * @return the turn
+         */
+        public static Turn move(int seat, List<PlayedCard> cards, int points) {
+            int n = cards.size();
+            int[] ids = new int[n];
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            for (int i = 0; i < n; i++) {
+                PlayedCard c = cards.get(i);
+                ids[i] = c.card.id();
+                xs[i] = c.x;
+                ys[i] = c.y;
+            }
+            return new Turn(seat, false, ids, xs, ys, points);
+        }
+
+        /**
+         * A discard of the given cards. The deck depends on the order the
+         * cards went back into it, so it is kept.
+         *
+         * @param seat the seat of the player
+         * @param cards the cards discarded, in the order they went into the
+         * deck
+         * @return the turn
+         */
+        public static Turn discard(int seat, List<Card> cards) {
+            int[] ids = new int[cards.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = cards.get(i).id();
+            }
+            return new Turn(seat, true, ids, new int[0], new int[0], 0);
+        }
+
+        public int getSeat() {
+            return seat;
+        }
+
+        public boolean isDiscard() {
+            return discard;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        public int size() {
+            return cards.length;
+        }
+
+        public Card getCard(int i) {
+            return Card.fromId(cards[i]);
+        }
+
+        /**
+         * The cards of the turn, with no player.
+         *
+         * @return the cards placed, or an empty list for a discard
+         */
+        public List<PlayedCard> getPlaced() {
+            List<PlayedCard> result = new ArrayList<>(xs.length);
+            for (int i = 0; i < xs.length; i++) {
+                result.add(new PlayedCard(Card.fromId(cards[i]), null, xs[i], ys[i]));
+            }
+            return result;
+        }
+
+        /**
+         * The cards discarded in the turn.
+         *
+         * @return the cards in the order they went into the deck, or an
+         * empty list for a move
+         */
+        public List<Card> getDiscarded() {
+            List<Card> result = new ArrayList<>(discard ? cards.length : 0);
+            if (discard) {
+                for (int id : cards) {
+                    result.add(Card.fromId(id));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "seat " + seat + (discard ? " discards " + getDiscarded() : " plays " + getPlaced() + " for " + points);
+        }
+    }
+
+    private final long seed;
+    private final List<String> players;
+    private final int startCard;
+    private final List<Turn> turns;
+
+    public GameRecord(long seed, List<String> players, int startCard, List<Turn> turns) {
+        if (players.size() > MAX_SEATS) {
+            throw new IllegalArgumentException("Too many players: " + players.size());
+        }
+        this.seed = seed;
+        this.players = Collections.unmodifiableList(new ArrayList<>(players));
+        this.startCard = startCard;
+        this.turns = Collections.unmodifiableList(new ArrayList<>(turns));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The names of the players, in the order they played.
+     *
+     * @return the names
+     */
+    public List<String> getPlayers() {
+        return players;
+    }
+
+    public Card getStartCard() {
+        return Card.fromId(startCard);
+    }
+
+    public List<Turn> getTurns() {
+        return turns;
+    }
+
+    /**
+     * The score of each player at the end of the game.
+     *
+     * @return the scores, by seat
+     */
+    public int[] finalScores() {
+        int[] scores = new int[players.size()];
+        for (Turn t : turns) {
+            scores[t.seat] += t.points;
+        }
+        return scores;
+    }
+
+    /**
+     * The board at the end of the game. Its cards have no players.
+     *
+     * @return a new board
+     */
+    public Board finalBoard() {
+        Board board = new Board();
+        board.add(new PlayedCard(getStartCard(), null, 0, 0));
+        for (Turn t : turns) {
+            board.addAll(t.getPlaced());
+        }
+        return board;
+    }
+
+    /**
+     * The binary form of the record.
+     *
+     * @return the bytes
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + 8 * turns.size());
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (seed >>> shift));
+        }
+        out.write(players.size());
+        for (String name : players) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(startCard);
+        writeVarint(out, turns.size());
+        for (Turn t : turns) {
+            out.write(t.seat | t.cards.length << 3 | (t.discard ? DISCARD : 0));
+            for (int i = 0; i < t.cards.length; i++) {
+                out.write(t.cards[i]);
+                if (!t.discard) {
+                    writeVarint(out, zigzag(t.xs[i]));
+                    writeVarint(out, zigzag(t.ys[i]));
+                }
+            }
+            if (!t.discard) {
+                writeVarint(out, t.points);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a record from its binary form, from the position of the buffer
+     * to its limit.
+     *
+     * @param in the buffer
+     * @return the record
+     */
+    public static GameRecord decode(ByteBuffer in) {
+        long seed = in.getLong();
+        int n = in.get() & 0xFF;
+        List<String> players = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] bytes = new byte[readVarint(in)];
+            in.get(bytes);
+            players.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        int startCard = in.get() & 0xFF;
+        int count = readVarint(in);
+        List<Turn> turns = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            int tag = in.get() & 0xFF;
+            int seat = tag & (MAX_SEATS - 1);
+            int size = tag >>> 3 & 7;
+            boolean discard = (tag & DISCARD) != 0;
+            int[] cards = new int[size];
+            int[] xs = new int[discard ? 0 : size];
+            int[] ys = new int[discard ? 0 : size];
+            for (int i = 0; i < size; i++) {
+                cards[i] = in.get() & 0xFF;
+                if (!discard) {
+                    xs[i] = unzigzag(readVarint(in));
+                    ys[i] = unzigzag(readVarint(in));
+                }
+            }
+            int points = discard ? 0 : readVarint(in);
+            turns.add(new Turn(seat, discard, cards, xs, ys, points));
+        }
+        return new GameRecord(seed, players, startCard, turns);
+    }
+
+    private static int zigzag(int v) {
+        return v << 1 ^ v >> 31;
+    }
+
+    private static int unzigzag(int v) {
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write(v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "game (seed " + seed + ") " + players + " " + turns.size() + " turns " + Arrays.toString(finalScores());
+    }
+}
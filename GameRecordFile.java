@@ -0,0 +1,188 @@
+package iota;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only segment file of game records, mapped into memory. The file
+ * has a fixed size, set when it is made, and is laid out as a header, an
+ * index holding the offset at which each record ends, and then the records
+ * themselves one after another. A record is found through the index in
+ * constant time, so any game can be read back without reading the ones
+ * before it.
+ * <p>
+ * A record is written and its offset put in the index before the count in
+ * the header is raised, so a file that was not closed properly holds every
+ * record counted in it. Appends may come from many threads; reads need no
+ * locking and may run alongside them.
+ */
+public final class GameRecordFile implements Closeable {
+
+    private static final int MAGIC = 0x494F5441; // "IOTA"
+    private static final int VERSION = 1;
+
+    // The header: magic, version, index capacity and record count.
+    private static final int CAPACITY_AT = 8;
+    private static final int COUNT_AT = 12;
+    private static final int HEADER = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int maxRecords;
+    private final int dataStart;
+    private volatile int count;
+    private int end;
+
+    private GameRecordFile(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.maxRecords = buffer.getInt(CAPACITY_AT);
+        this.dataStart = HEADER + Long.BYTES * maxRecords;
+        this.count = buffer.getInt(COUNT_AT);
+        this.end = endOf(count - 1);
+    }
+
+    // The offset just past the given record, or the start of the data for
+    // the record before the first.
+    private int endOf(int index) {
+        return index < 0 ? dataStart : (int) buffer.getLong(HEADER + Long.BYTES * index);
+    }
+
+    /**
+     * Make a new segment file, replacing any file at the path.
+     *
+     * @param path where to make it
+     * @param size the size of the file in bytes, at most Integer.MAX_VALUE
+     * @param maxRecords the number of records the index can hold
+     * @return the open file
+     * @throws IOException if the file cannot be made
+     */
+    public static GameRecordFile create(Path path, long size, int maxRecords) throws IOException {
+        long dataStart = HEADER + (long) Long.BYTES * maxRecords;
+        if (maxRecords < 1 || size > Integer.MAX_VALUE || size <= dataStart) {
+            throw new IllegalArgumentException("No room for records: " + size + " bytes, " + maxRecords + " records");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_AT, maxRecords);
+        buffer.putInt(COUNT_AT, 0);
+        return new GameRecordFile(channel, buffer);
+    }
+
+    /**
+     * Open an existing segment file to read it or append to it.
+     *
+     * @param path the file
+     * @return the open file
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    public static GameRecordFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not a game record file: " + path);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a game record file: " + path);
+        }
+        return new GameRecordFile(channel, buffer);
+    }
+
+    /**
+     * Add a record to the end of the file.
+     *
+     * @param record the record
+     * @return the index of the record
+     * @throws IllegalStateException if the segment is full
+     */
+    public int append(GameRecord record) {
+        return append(record.encode());
+    }
+
+    /**
+     * Add an encoded record to the end of the file.
+     *
+     * @param record the bytes of the record
+     * @return the index of the record
+     * @throws IllegalStateException if the segment is full
+     */
+    public synchronized int append(byte[] record) {
+        if (count == maxRecords || buffer.capacity() - end < record.length) {
+            throw new IllegalStateException("Segment full: " + count + " records, " + end + " bytes");
+        }
+        ByteBuffer out = buffer.duplicate();
+        out.position(end);
+        out.put(record);
+        end += record.length;
+        buffer.putLong(HEADER + Long.BYTES * count, end);
+        buffer.putInt(COUNT_AT, count + 1);
+        return count++;
+    }
+
+    /**
+     * The number of records in the file.
+     *
+     * @return the count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The bytes of a record.
+     *
+     * @param index the index of the record
+     * @return a read-only buffer holding just the record
+     */
+    public ByteBuffer raw(int index) {
+        int n = count;
+        if (index < 0 || index >= n) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + n);
+        }
+        ByteBuffer in = buffer.asReadOnlyBuffer();
+        in.limit(endOf(index));
+        in.position(endOf(index - 1));
+        return in.slice();
+    }
+
+    public GameRecord read(int index) {
+        return GameRecord.decode(raw(index));
+    }
+
+    /**
+     * The number of bytes taken by the records.
+     *
+     * @return the bytes used
+     */
+    public synchronized long bytesUsed() {
+        return end - dataStart;
+    }
+
+    /**
+     * Write the file out to the disk.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return count + " game records in " + bytesUsed() + " bytes";
+    }
+}
@@ -0,0 +1,100 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A listener that records each game its manager plays and appends the record
+ * to a segment file when the game is over. One file can take the games of
+ * many managers at once. Once the file is full, games are no longer recorded;
+ * each one lost is logged and counted, and play goes on.
+ */
+public class GameRecorder implements GameListener {
+
+    private final GameRecordFile file;
+    private GameLog log;
+    private int dropped;
+
+    // The game being recorded, or null between games.
+    private List<String> names;
+    private final Map<Player, Integer> seats = new IdentityHashMap<>();
+    private long seed;
+    private int startCard;
+    private final List<GameRecord.Turn> turns = new ArrayList<>();
+    private final List<PlayedCard> placed = new ArrayList<>();
+    private int lastIndex = -1;
+
+    public GameRecorder(GameRecordFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public void gameStarted(Manager m, long seed, List<Player> players) {
+        this.log = m.getLog();
+        this.seed = seed;
+        names = new ArrayList<>(players.size());
+        seats.clear();
+        for (Player p : players) {
+            seats.put(p, names.size());
+            names.add(p.getName());
+        }
+        turns.clear();
+        placed.clear();
+    }
+
+    @Override
+    public void cardPlaced(PlayedCard card, int version) {
+        if (card.p == null) {
+            startCard = card.card.id();
+        } else {
+            placed.add(card);
+        }
+    }
+
+    @Override
+    public void scoreChanged(Player p, int points, int total) {
+        turns.add(GameRecord.Turn.move(seats.get(p), placed, points));
+        placed.clear();
+    }
+
+    @Override
+    public void cardsDiscarded(Player p, List<Card> cards) {
+        turns.add(GameRecord.Turn.discard(seats.get(p), cards));
+    }
+
+    @Override
+    public void gameOver(List<Player> winners) {
+        if (names == null) {
+            return;
+        }
+        try {
+            lastIndex = file.append(new GameRecord(seed, names, startCard, turns));
+        } catch (IllegalStateException e) {
+            // The segment is full.
+            dropped++;
+            lastIndex = -1;
+            log.log(GameLog.Event.RECORD_DROPPED, e.getMessage());
+        }
+        names = null;
+    }
+
+    /**
+     * The number of games that could not be recorded as the file was full.
+     *
+     * @return the count
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Where the last game recorded went in the file.
+     *
+     * @return the index of its record, or -1 if it was not recorded
+     */
+    public int getLastIndex() {
+        return lastIndex;
+    }
+}
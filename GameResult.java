@@ -0,0 +1,73 @@
+package iota;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of one game of a tournament: the final score of each entrant
+ * and which of them won. Entrants are listed in the order the tournament was
+ * given them, not the order they played in. Everyone with the highest score
+ * is a winner, so a draw has several. The seed the game was played with is
+ * kept so that it can be played again.
+ */
+public final class GameResult {
+
+    private final int game;
+    private final long seed;
+    private final String[] names;
+    private final int[] scores;
+    private final boolean[] winners;
+
+    GameResult(int game, long seed, String[] names, int[] scores) {
+        this.game = game;
+        this.seed = seed;
+        this.names = names.clone();
+        this.scores = scores.clone();
+        int best = Integer.MIN_VALUE;
+        for (int s : scores) {
+            best = Math.max(best, s);
+        }
+        winners = new boolean[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            winners[i] = scores[i] == best;
+        }
+    }
+
+    /**
+     * The index of the game in its tournament.
+     *
+     * @return the game index
+     */
+    public int getGame() {
+        return game;
+    }
+
+    /**
+     * The seed of the game; a manager made with it plays the same game.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getEntrants() {
+        return names.length;
+    }
+
+    public String getName(int entrant) {
+        return names[entrant];
+    }
+
+    public int getScore(int entrant) {
+        return scores[entrant];
+    }
+
+    public boolean isWinner(int entrant) {
+        return winners[entrant];
+    }
+
+    @Override
+    public String toString() {
+        return "game " + game + " (seed " + seed + ") " + Arrays.toString(names) + " " + Arrays.toString(scores);
+    }
+}
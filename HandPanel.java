@@ -2,7 +2,6 @@ package iota;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
 
 class HandPanel extends JPanel {
 
@@ -11,6 +10,8 @@ class HandPanel extends JPanel {
     private int height;
     private int width;
     Player player;
+    // The faces drawn for each hand position, indexed by position and card id.
+    private final PlayedCard[][] faces = new PlayedCard[4][64];
 
     public HandPanel(Manager m, int width, int height, Player p) {
         this.manager = m;
@@ -30,17 +31,16 @@ class HandPanel extends JPanel {
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        ArrayList<Card> hand = manager.getHand(player);
-        ArrayList<PlayedCard> visibleHand = new ArrayList<>();
         int i = 0;
         for (Card c :
-                hand) {
-            visibleHand.add(new PlayedCard(c, player, i, 0));
-            i++;
-        }
-        for (PlayedCard pc :
-                visibleHand) {
+                manager.getHandSet(player)) {
+            PlayedCard pc = faces[i][c.id()];
+            if (pc == null) {
+                pc = new PlayedCard(c, player, i, 0);
+                faces[i][c.id()] = pc;
+            }
             pc.drawCard(g, 0);
+            i++;
         }
         g.setColor(Color.BLACK);
         g.drawString("Player Number: " + (manager.getPlayerNumber(player) + 1), 10, 90);
@@ -31,7 +31,6 @@ public class IotaDisplay extends JPanel {
         int displayHeight = 11;
         setLayout(new BoxLayout(this, BoxLayout.LINE_AXIS));
         dp = new DisplayPanel(m, 68 * PlayedCard.SIZE, 68 * PlayedCard.SIZE);
-        Point defaultPosition = new Point(dp.width / 2 - displayWidth / 2 * PlayedCard.SIZE, dp.height / 2 - displayHeight / 2 * PlayedCard.SIZE);
         sp = new JScrollPane(dp);
         sp.setPreferredSize(new Dimension(displayWidth * PlayedCard.SIZE, displayHeight * PlayedCard.SIZE));
         sp.setMinimumSize(new Dimension(displayWidth * PlayedCard.SIZE, displayHeight * PlayedCard.SIZE));
@@ -40,7 +39,8 @@ public class IotaDisplay extends JPanel {
         add(sp);
         add(Box.createHorizontalGlue());
         setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-        sp.getViewport().setViewPosition(defaultPosition);
+        dp.boardChanged();
+        centre();
         JPanel hands = new JPanel();
         add(hands);
         hands.setLayout(new BoxLayout(hands, BoxLayout.PAGE_AXIS));
@@ -72,7 +72,7 @@ public class IotaDisplay extends JPanel {
             public void actionPerformed(ActionEvent e) {
                 if (!m.gameOver) {
                     m.step();
-                    dp.repaint();
+                    dp.boardChanged();
                     for (HandPanel hp : handPanels) {
                         hp.repaint();
                     }
@@ -82,7 +82,7 @@ public class IotaDisplay extends JPanel {
         centerButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                sp.getViewport().setViewPosition(defaultPosition);
+                centre();
             }
         });
         runButton.addActionListener(new ActionListener() {
@@ -90,14 +90,14 @@ public class IotaDisplay extends JPanel {
             public void actionPerformed(ActionEvent e) {
                 if (!m.gameOver) {
                     m.play();
-                    dp.repaint();
+                    dp.boardChanged();
                     for (HandPanel hp : handPanels) {
                         hp.repaint();
                     }
                 } else {
                     m.setup();
                     m.play();
-                    dp.repaint();
+                    dp.boardChanged();
                     for (HandPanel hp : handPanels) {
                         hp.repaint();
                     }
@@ -108,7 +108,7 @@ public class IotaDisplay extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 m.setup();
-                dp.repaint();
+                dp.boardChanged();
                 for (HandPanel hp : handPanels) {
                     hp.repaint();
                 }
@@ -116,6 +116,20 @@ public class IotaDisplay extends JPanel {
         });
     }
 
+    /**
+     * Scroll so the card at (0,0) is in the middle of the view.
+     */
+    private void centre() {
+        Dimension view = sp.getViewport().getExtentSize();
+        if (view.width == 0 || view.height == 0) {
+            view = sp.getPreferredSize();
+        }
+        Point origin = dp.originPixel();
+        sp.getViewport().setViewPosition(new Point(
+                Math.max(0, origin.x + PlayedCard.SIZE / 2 - view.width / 2),
+                Math.max(0, origin.y + PlayedCard.SIZE / 2 - view.height / 2)));
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,123 @@
+package iota;
+
+/**
+ * Precomputed tables for lines of Iota cards. A line is summarised by its
+ * number of cards and a colour, shape and value mask, each with bit i set
+ * when some card has the attribute with ordinal i (or value i + 1). There
+ * are only a few thousand such summaries for lines of up to three cards, so
+ * for each one the table holds the mask of card ids that extend it to a
+ * longer line that is still a set. Checking a line then takes a lookup
+ * rather than a comparison of every card with every other.
+ */
+public final class LineTable {
+
+    private static final int MAX_LINE = 4;
+
+    /**
+     * SET_MASKS[n] has bit m set when the 4-bit attribute mask m is possible
+     * for n cards forming a set, i.e. one attribute value (all the same) or n
+     * attribute values (all different).
+     */
+    private static final int[] SET_MASKS = new int[MAX_LINE + 1];
+
+    // EXTENSIONS[index(n, c, s, v)] for n < 4.
+    private static final long[] EXTENSIONS = new long[MAX_LINE << 12];
+
+    static {
+        for (int n = 0; n <= MAX_LINE; n++) {
+            for (int m = 0; m < 16; m++) {
+                int k = Integer.bitCount(m);
+                if (n <= 2 || k == 1 || k == n) {
+                    SET_MASKS[n] |= 1 << m;
+                }
+            }
+        }
+        for (int state = 0; state < EXTENSIONS.length; state++) {
+            int n = state >>> 12;
+            int colours = (state >>> 8) & 15;
+            int shapes = (state >>> 4) & 15;
+            int values = state & 15;
+            long result = 0L;
+            for (Colour colour : Colour.values()) {
+                for (Shape shape : Shape.values()) {
+                    for (int value = 1; value <= 4; value++) {
+                        if (isSet(n + 1, colours | 1 << colour.ordinal(), shapes | 1 << shape.ordinal(),
+                                values | 1 << (value - 1))) {
+                            result |= 1L << Card.of(colour, shape, value).id();
+                        }
+                    }
+                }
+            }
+            EXTENSIONS[state] = result;
+        }
+    }
+
+    private LineTable() {
+    }
+
+    private static int index(int count, int colours, int shapes, int values) {
+        return count << 12 | colours << 8 | shapes << 4 | values;
+    }
+
+    /**
+     * Checks if count cards with the given attribute masks form a set.
+     *
+     * @param count the number of cards
+     * @param colours the colour mask
+     * @param shapes the shape mask
+     * @param values the value mask
+     * @return true if the cards form a set
+     */
+    public static boolean isSet(int count, int colours, int shapes, int values) {
+        if (count > MAX_LINE) {
+            return false;
+        }
+        int ok = SET_MASKS[count];
+        return ((ok >> colours) & (ok >> shapes) & (ok >> values) & 1) != 0;
+    }
+
+    /**
+     * The cards which could be added to a line of count cards with the given
+     * attribute masks so that it still forms a set of at most four cards.
+     * Whether the cards are still available is not considered.
+     *
+     * @param count the number of cards in the line
+     * @param colours the colour mask of the line
+     * @param shapes the shape mask of the line
+     * @param values the value mask of the line
+     * @return the mask of card ids that extend the line
+     */
+    public static long extensions(int count, int colours, int shapes, int values) {
+        if (count >= MAX_LINE) {
+            return 0L;
+        }
+        return EXTENSIONS[index(count, colours, shapes, values)];
+    }
+
+    /**
+     * Whether a line can still be completed to four cards using only the
+     * available cards, each used at most once.
+     *
+     * @param count the number of cards in the line
+     * @param colours the colour mask of the line
+     * @param shapes the shape mask of the line
+     * @param values the value mask of the line
+     * @param available the mask of card ids that may be added
+     * @return true if some choice of available cards makes a line of four
+     */
+    public static boolean canReachFour(int count, int colours, int shapes, int values, long available) {
+        if (count >= MAX_LINE) {
+            return count == MAX_LINE && isSet(count, colours, shapes, values);
+        }
+        long cards = extensions(count, colours, shapes, values) & available;
+        while (cards != 0L) {
+            int id = Long.numberOfTrailingZeros(cards);
+            if (canReachFour(count + 1, colours | Utilities.colourBit(id), shapes | Utilities.shapeBit(id),
+                    values | Utilities.valueBit(id), available & ~(1L << id))) {
+                return true;
+            }
+            cards &= cards - 1;
+        }
+        return false;
+    }
+}
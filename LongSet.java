@@ -0,0 +1,181 @@
+package iota;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs, such as packed board positions, kept in an open-addressing
+ * table so that nothing is boxed.
+ */
+public class LongSet {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean hasFree;
+
+    public LongSet() {
+        this(16);
+    }
+
+    public LongSet(int expected) {
+        int capacity = 16;
+        while (capacity < 2 * expected) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param key the value
+     * @return true if the value was not already present
+     */
+    public boolean add(long key) {
+        if (key == FREE) {
+            boolean added = !hasFree;
+            hasFree = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+        int i = mix(key) & mask;
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (2 * ++size > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return hasFree;
+        }
+        int i = mix(key) & mask;
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Remove a value from the set.
+     *
+     * @param key the value
+     * @return true if the value was present
+     */
+    public boolean remove(long key) {
+        if (key == FREE) {
+            boolean removed = hasFree;
+            hasFree = false;
+            size -= removed ? 1 : 0;
+            return removed;
+        }
+        int i = mix(key) & mask;
+        long k;
+        while ((k = keys[i]) != key) {
+            if (k == FREE) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // Shift back any later entries of the probe run that can fill the gap.
+        int gap = i;
+        int j = (i + 1) & mask;
+        while ((k = keys[j]) != FREE) {
+            int home = mix(k) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = k;
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    /**
+     * Make an independent copy of this set.
+     *
+     * @return the copy
+     */
+    public LongSet copy() {
+        LongSet result = new LongSet();
+        result.keys = keys.clone();
+        result.mask = mask;
+        result.size = size;
+        result.hasFree = hasFree;
+        return result;
+    }
+
+    private void grow() {
+        long[] old = keys;
+        keys = new long[old.length << 1];
+        Arrays.fill(keys, FREE);
+        mask = keys.length - 1;
+        for (long key : old) {
+            if (key != FREE) {
+                int i = mix(key) & mask;
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+        hasFree = false;
+    }
+
+    /**
+     * The values in the set, in no particular order.
+     *
+     * @return a new array of the values
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int j = 0;
+        if (hasFree) {
+            result[j++] = FREE;
+        }
+        for (long key : keys) {
+            if (key != FREE) {
+                result[j++] = key;
+            }
+        }
+        return result;
+    }
+}
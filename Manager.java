@@ -1,7 +1,14 @@
 package iota;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Manager class for an Iota game
@@ -10,9 +17,13 @@ import java.util.stream.Collectors;
  */
 public class Manager {
 
-    private ArrayList<PlayedCard> board = new ArrayList<>();
+    private Board board = new Board();
     private int playerNumber = 0;
-    private HashMap<Player, ArrayList<Card>> hands = new HashMap<>();
+    private HashMap<Player, CardSet> hands = new HashMap<>();
+    // When each card was last dealt, by card id, so hands keep deal order.
+    private int[] dealtAt = new int[64];
+    private int deals = 0;
+    private long handKey = 0L;
     private HashMap<Player, Integer> score = new HashMap<>();
     private Deck deck;
     private int passCounter = 0;
@@ -21,15 +32,49 @@ public class Manager {
     private boolean gameStarted = false;
     ArrayList<Player> players = new ArrayList<>();
     private TreeMap<String, Integer> winRecord = new TreeMap<>();
+    // The seed of the current game and of the one after it.
+    private long seed;
+    private long nextSeed;
+    private final List<GameListener> listeners = new CopyOnWriteArrayList<>();
+    private GameLog log = GameLog.console();
+    // Time budgets in nanoseconds, 0 for none, and the think times of the
+    // current game.
+    private long moveBudget = 0L;
+    private long gameBudget = 0L;
+    private HashMap<Player, ThinkTimes> thinkTimes = new HashMap<>();
+    // The time spent in calls to the player this turn.
+    private long thinking;
+
+    // The answer each player owes from its last call on a player thread. A
+    // player is not asked again until it has answered.
+    private final HashMap<Player, CompletableFuture<?>> running = new HashMap<>();
+
+    // Players with a time budget are asked for their moves on these threads,
+    // so that the manager can stop waiting. A player that overruns is
+    // interrupted and left running on its thread.
+    private static final ExecutorService PLAYER_THREADS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "iota-player");
+        t.setDaemon(true);
+        return t;
+    });
 
     public Manager() {
+        this(new SplittableRandom().nextLong());
     }
 
-    private void addPlayer(Player player) {
-        System.err.flush();
-        System.out.flush();
-        System.out.println(player.getName());
+    /**
+     * A manager whose first game is played with the given seed. Everything
+     * random in a game (the order of play and the deck) comes from its seed,
+     * so a game can be played again from the seed recorded for it.
+     *
+     * @param seed the seed of the first game
+     */
+    public Manager(long seed) {
+        this.nextSeed = seed;
+    }
 
+    private void addPlayer(Player player) {
+        log.log(GameLog.Event.PLAYER_JOINED, player.getName());
         this.players.add(player);
     }
 
@@ -41,6 +86,66 @@ public class Manager {
         }
     }
 
+    /**
+     * Send the events of games to the given log instead of the console.
+     *
+     * @param log the log
+     */
+    public void setLog(GameLog log) {
+        this.log = log;
+    }
+
+    public GameLog getLog() {
+        return log;
+    }
+
+    /**
+     * Limit the time a player may take over each turn. A player that takes
+     * longer is interrupted and treated as having played an illegal move,
+     * unless it is an anytime player that has published a move.
+     *
+     * @param time the time allowed per turn, or 0 for no limit
+     * @param unit the unit of the time
+     */
+    public void setMoveBudget(long time, TimeUnit unit) {
+        moveBudget = unit.toNanos(time);
+    }
+
+    /**
+     * Limit the time a player may take over all its turns in a game. Once it
+     * is used up every turn of the player is treated as an illegal move.
+     *
+     * @param time the time allowed per game, or 0 for no limit
+     * @param unit the unit of the time
+     */
+    public void setGameBudget(long time, TimeUnit unit) {
+        gameBudget = unit.toNanos(time);
+    }
+
+    /**
+     * How long the given player has taken over its turns in the current
+     * game.
+     *
+     * @param p the player
+     * @return the think times of the player
+     */
+    public ThinkTimes getThinkTimes(Player p) {
+        return thinkTimes.get(p);
+    }
+
+    /**
+     * Register a listener for the events of every game from now on.
+     *
+     * @param listener the listener
+     */
+    public void addListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(GameListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Get (a copy of) the current state of the board.
      *
@@ -48,26 +153,107 @@ public class Manager {
      * order they were played.
      */
     public ArrayList<PlayedCard> getBoard() {
-        ArrayList<PlayedCard> result = new ArrayList<>();
-        for (PlayedCard c : board) {
-            result.add(c.copy());
-        }
-        return result;
+        return new ArrayList<>(board().asList());
+    }
+
+    /**
+     * A read-only view of the board as it is now. It takes constant time and
+     * no copying, and later moves do not change it.
+     *
+     * @return the snapshot
+     */
+    public BoardSnapshot getSnapshot() {
+        return new BoardSnapshot(board());
+    }
+
+    /**
+     * The number of cards on the board, which goes up by one with each card
+     * placed.
+     *
+     * @return the version of the board
+     */
+    public int getBoardVersion() {
+        return board().size();
     }
 
     /**
      * Return the hand of the given player.
      *
      * @param p The player.
-     * @return The hand of the given player.
+     * @return The hand of the given player, in the order it was dealt.
      */
     public ArrayList<Card> getHand(Player p) {
-        ArrayList<Card> handCopy = new ArrayList<>();
-        for (Card c :
-                hands.get(p)) {
-            handCopy.add(new Card(c.colour, c.shape, c.value));
-        }
-        return handCopy;
+        Frozen f = frozen();
+        int[] order = f != null ? f.dealtAt : dealtAt;
+        ArrayList<Card> hand = hand(p).toList();
+        hand.sort(Comparator.comparingInt(c -> order[c.id()]));
+        return hand;
+    }
+
+    /**
+     * Return the hand of the given player as a card set.
+     *
+     * @param p The player.
+     * @return The hand of the given player.
+     */
+    public CardSet getHandSet(Player p) {
+        return hand(p);
+    }
+
+    /**
+     * Return the cards the given player has not seen, i.e. those that are
+     * neither on the board nor in their hand. These are the cards in the deck
+     * and in the opponents' hands.
+     *
+     * @param p The player.
+     * @return The cards unseen by the player.
+     */
+    public CardSet getUnseen(Player p) {
+        return CardSet.ALL.minus(board().cards()).minus(hand(p));
+    }
+
+    /**
+     * The Zobrist key of the board. It is kept up to date as cards are
+     * played, so reading it takes constant time.
+     *
+     * @return the key of the board
+     */
+    public long getBoardKey() {
+        return board().key();
+    }
+
+    /**
+     * The Zobrist key of the whole position: the board, every player's hand
+     * and the cards left in the deck.
+     *
+     * @return the key of the position
+     */
+    public long getPositionKey() {
+        Frozen f = frozen();
+        return f != null ? f.board.key() ^ f.handKey ^ f.deckKey : board.key() ^ handKey ^ deck.key();
+    }
+
+    /**
+     * The Zobrist key of the whole position with the given player to move,
+     * as a player searching from the position would key its results.
+     *
+     * @param p the player to move
+     * @return the key of the position
+     */
+    public long getPositionKey(Player p) {
+        return getPositionKey() ^ Zobrist.toMove(getPlayerNumber(p));
+    }
+
+    /**
+     * Replace the hand of a player, keeping the key of the hands up to date.
+     *
+     * @param p the player
+     * @param hand the new hand
+     */
+    private void setHand(Player p, CardSet hand) {
+        CardSet old = hands.put(p, hand);
+        long changed = hand.bits() ^ (old == null ? 0L : old.bits());
+        handKey ^= Zobrist.hand(getPlayerNumber(p), changed);
     }
 
     /**
@@ -82,13 +268,13 @@ public class Manager {
         for (Player opponent :
                 players) {
             if (!opponent.equals(p))
-                scores.add(score.get(p) - score.get(opponent));
+                scores.add(scoreOf(p) - scoreOf(opponent));
         }
         return scores;
     }
 
     public int getRawScore(Player p) {
-        return score.get(p);
+        return scoreOf(p);
     }
 
     /**
@@ -102,7 +288,7 @@ public class Manager {
         for (Player opponent :
                 players) {
             if (!opponent.equals(p))
-                handSizes.add(hands.get(opponent).size());
+                handSizes.add(hand(opponent).size());
         }
         return handSizes;
     }
@@ -110,14 +296,24 @@ public class Manager {
     private void dealHands() {
         for (Player player :
                 players) {
-            ArrayList<Card> h = new ArrayList<>();
-            for (int i = 0; i < 4; i++) h.add(deck.dealCard());
-            hands.put(player, h);
+            CardSet h = CardSet.EMPTY;
+            for (int i = 0; i < 4; i++) h = h.with(dealCard());
+            setHand(player, h);
+            for (GameListener l : listeners) {
+                l.cardsDealt(player, h);
+            }
         }
     }
 
     private void seedBoard() {
-        board.add(new PlayedCard(deck.dealCard(), null, 0, 0));
+        place(new PlayedCard(deck.dealCard(), null, 0, 0));
+    }
+
+    private void place(PlayedCard card) {
+        board.add(card);
+        for (GameListener l : listeners) {
+            l.cardPlaced(card, board.size());
+        }
     }
 
     private void resetScores() {
@@ -128,10 +324,22 @@ public class Manager {
     }
 
     void setup() {
-        deck = new Deck();
-        board = new ArrayList<>();
-        Collections.shuffle(players);
+        seed = nextSeed;
+        SplittableRandom random = new SplittableRandom(seed);
+        nextSeed = random.nextLong();
+        deck = new Deck(random.split());
+        board = new Board();
+        Deck.shuffle(players, random);
+        hands.clear();
+        handKey = 0L;
+        thinkTimes.clear();
+        for (Player player : players) {
+            thinkTimes.put(player, new ThinkTimes());
+        }
         resetScores();
+        for (GameListener l : listeners) {
+            l.gameStarted(this, seed, Collections.unmodifiableList(players));
+        }
         dealHands();
         seedBoard();
         playerNumber = 0;
@@ -146,6 +354,15 @@ public class Manager {
         }
     }
 
+    /**
+     * The seed of the current game.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
     public int getPlayerNumber(Player p) {
         for (int i = 0; i < players.size(); i++) {
             if (players.get(i) == p) {
@@ -164,68 +381,320 @@ public class Manager {
         }
     }
 
+    private Card dealCard() {
+        Card card = deck.dealCard();
+        dealtAt[card.id()] = deals++;
+        return card;
+    }
+
     private void deal_to_player(Player player) {
-        ArrayList<Card> smallhand = hands.get(player);
+        CardSet smallhand = hands.get(player);
+        CardSet dealt = CardSet.EMPTY;
         int sizediff = 4 - smallhand.size();
         for (int i = 0; i < sizediff; i++) {
             if (deck.hasCard())
-                smallhand.add(deck.dealCard());
+                dealt = dealt.with(dealCard());
+        }
+        setHand(player, smallhand.union(dealt));
+        if (!dealt.isEmpty()) {
+            for (GameListener l : listeners) {
+                l.cardsDealt(player, dealt);
+            }
         }
     }
 
-    private void discardStep(Player player, ArrayList<Card> discardPile) {
+    private void discardStep(Player player, ArrayList<Card> discardPile, CardSet discards) {
         deck.addCards(discardPile);
-        hands.get(player).removeAll(discardPile);
+        setHand(player, hands.get(player).minus(discards));
+        log.log(GameLog.Event.DISCARD, player.getName());
+        if (!listeners.isEmpty()) {
+            List<Card> pile = Collections.unmodifiableList(new ArrayList<>(discardPile));
+            for (GameListener l : listeners) {
+                l.cardsDiscarded(player, pile);
+            }
+        }
+    }
+
+    /**
+     * The time by which the given player must finish a turn starting now.
+     *
+     * @param p the player
+     * @param start the start of the turn, from System.nanoTime
+     * @return the deadline, or Long.MAX_VALUE if there is none
+     */
+    private long deadline(Player p, long start) {
+        long allowed = Long.MAX_VALUE;
+        if (moveBudget > 0) {
+            allowed = moveBudget;
+        }
+        if (gameBudget > 0) {
+            allowed = Math.min(allowed, Math.max(0L, gameBudget - thinkTimes.get(p).total()));
+        }
+        return allowed == Long.MAX_VALUE ? Long.MAX_VALUE : start + allowed;
+    }
+
+    /**
+     * The game as a player asked on a player thread sees it: a copy of the
+     * board, hands, scores and keys made when it was asked. The manager goes
+     * on with the game while a call that overran is still running, so such a
+     * call must not read the manager's own state.
+     */
+    private static final class Frozen {
+
+        final Manager manager;
+        final Board board;
+        final HashMap<Player, CardSet> hands;
+        final HashMap<Player, Integer> score;
+        final int[] dealtAt;
+        final long handKey;
+        final long deckKey;
+
+        Frozen(Manager m) {
+            manager = m;
+            board = m.board.copy();
+            hands = new HashMap<>(m.hands);
+            score = new HashMap<>(m.score);
+            dealtAt = m.dealtAt.clone();
+            handKey = m.handKey;
+            deckKey = m.deck.key();
+        }
+    }
+
+    // The frozen game seen by the call running on each player thread.
+    private static final ThreadLocal<Frozen> FROZEN = new ThreadLocal<>();
+
+    // The frozen game if this is a call to a player of this manager on a
+    // player thread, or null.
+    private Frozen frozen() {
+        Frozen f = FROZEN.get();
+        return f != null && f.manager == this ? f : null;
+    }
+
+    private Board board() {
+        Frozen f = frozen();
+        return f != null ? f.board : board;
+    }
+
+    private CardSet hand(Player p) {
+        Frozen f = frozen();
+        return f != null ? f.hands.get(p) : hands.get(p);
+    }
+
+    private int scoreOf(Player p) {
+        Frozen f = frozen();
+        return f != null ? f.score.get(p) : score.get(p);
+    }
+
+    /**
+     * A call to a player on a player thread. Its answer is only complete once
+     * the player has returned, whether or not the manager was still waiting.
+     */
+    private static final class Call<T> implements Runnable {
+
+        private final Supplier<T> request;
+        private final Frozen game;
+        private final CompletableFuture<T> answer = new CompletableFuture<>();
+        private Thread thread;
+
+        Call(Supplier<T> request, Frozen game) {
+            this.request = request;
+            this.game = game;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                thread = Thread.currentThread();
+            }
+            FROZEN.set(game);
+            try {
+                answer.complete(request.get());
+            } catch (Throwable t) {
+                answer.completeExceptionally(t);
+            } finally {
+                FROZEN.remove();
+                synchronized (this) {
+                    thread = null;
+                    // Leave the pooled thread as it was found.
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Whether a player is still working on a call that it ran out of time
+     * for. Such a player must not be called again, as two calls at once
+     * could corrupt its state.
+     *
+     * @param player the player
+     * @return true if its last call has not returned
+     */
+    private boolean isBusy(Player player) {
+        CompletableFuture<?> last = running.get(player);
+        return last != null && !last.isDone();
+    }
+
+    /**
+     * Ask a player for something, waiting no later than the deadline. With
+     * no deadline the player is asked on this thread. Otherwise it is asked on
+     * a player thread, and sees a frozen copy of the game. A player still busy
+     * with an earlier call is not asked and is treated as out of time. The
+     * time taken counts as the player's thinking time.
+     *
+     * @param player the player
+     * @param request the call to the player
+     * @param deadline the deadline, from System.nanoTime
+     * @return what the player returned
+     * @throws TimeoutException if the player did not answer in time
+     */
+    private <T> T ask(Player player, Supplier<T> request, long deadline) throws TimeoutException {
+        if (isBusy(player)) {
+            throw new TimeoutException(player.getName() + " is still busy");
+        }
+        long asked = System.nanoTime();
+        try {
+            return answer(player, request, deadline);
+        } finally {
+            thinking += System.nanoTime() - asked;
+        }
+    }
+
+    private <T> T answer(Player player, Supplier<T> request, long deadline) throws TimeoutException {
+        if (deadline == Long.MAX_VALUE) {
+            return request.get();
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new TimeoutException();
+        }
+        Call<T> call = new Call<>(request, new Frozen(this));
+        running.put(player, call.answer);
+        PLAYER_THREADS.execute(call);
+        try {
+            return call.answer.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.interrupt();
+            throw e;
+        } catch (InterruptedException e) {
+            call.interrupt();
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Ask a player for its move. An anytime player is told the deadline, and
+     * if it has not answered by then its last published move is played.
+     *
+     * @param player the player
+     * @param deadline the deadline, from System.nanoTime
+     * @return the move
+     * @throws TimeoutException if the player has no move in time
+     */
+    private ArrayList<PlayedCard> move(Player player, long deadline) throws TimeoutException {
+        if (!(player instanceof AnytimePlayer) || deadline == Long.MAX_VALUE) {
+            return ask(player, player::makeMove, deadline);
+        }
+        if (isBusy(player)) {
+            throw new TimeoutException(player.getName() + " is still busy");
+        }
+        AnytimePlayer anytime = (AnytimePlayer) player;
+        long turn = anytime.startTurn();
+        try {
+            return ask(player, () -> anytime.makeMove(Deadline.at(deadline, turn)), deadline);
+        } catch (TimeoutException e) {
+            ArrayList<PlayedCard> best = anytime.published();
+            if (best == null) {
+                throw e;
+            }
+            log.log(GameLog.Event.LATE_MOVE, player.getName());
+            return best;
+        }
     }
 
     private void playerStep(Player player) {
-        ArrayList<PlayedCard> proposedMove = player.makeMove();
+        long start = System.nanoTime();
+        boolean timedOut = false;
+        thinking = 0L;
+        try {
+            takeTurn(player, deadline(player, start));
+        } catch (TimeoutException e) {
+            timedOut = true;
+            passCounter++;
+            log.log(GameLog.Event.TIMEOUT, player.getName());
+        }
+        thinkTimes.get(player).record(thinking, timedOut);
+        if (drawCounter >= 4 || passCounter >= 2) {
+            log.log(GameLog.Event.GAME_BLOCKED);
+            gameOver = true;
+        }
+    }
+
+    private void takeTurn(Player player, long deadline) throws TimeoutException {
+        ArrayList<PlayedCard> proposedMove = move(player, deadline);
         if (proposedMove.isEmpty()) {
-            // move empty, make player discard.
+            // move empty, make player discard. A discard that times out
+            // counts as a pass instead.
+            ArrayList<Card> discardPile = ask(player, player::discard, deadline);
             drawCounter++;
-            ArrayList<Card> discardPile = player.discard();
-            HashSet<Card> d = new HashSet<>(discardPile);
+            CardSet d = CardSet.of(discardPile);
             if (d.size() == discardPile.size() && hands.get(player).containsAll(d)) {
-                discardStep(player, discardPile);
+                discardStep(player, discardPile, d);
                 deal_to_player(player);
             } else {
                 passCounter++;
-                System.err.println("Some cards are not in " + player.getName() + "'s hand. Failed to Discard");
+                log.log(GameLog.Event.BAD_DISCARD, player.getName());
             }
         } else {
-            if (Utilities.isLegalMove(proposedMove, board)) {
-                int moveScore = Utilities.scoreForMove(proposedMove, board);
-                List cards = proposedMove.stream().map(i -> i.card).collect(Collectors.toList());
+            MoveResult result = Utilities.evaluate(proposedMove, board);
+            if (result.isLegal()) {
+                int moveScore = result.getScore();
+                CardSet cards = CardSet.EMPTY;
+                for (PlayedCard pc : proposedMove)
+                    cards = cards.with(pc.card);
                 if (hands.get(player).containsAll(cards)) {
                     int multiplier = 1;
-                    hands.get(player).removeAll(cards);
+                    setHand(player, hands.get(player).minus(cards));
                     if (!deck.hasCard() && hands.get(player).isEmpty()) {
                         multiplier = 2;
                         gameOver = true;
                     }
                     score.replace(player, score.get(player) + multiplier * moveScore);
-                    deal_to_player(player);
                     for (PlayedCard pc : proposedMove)
-                        board.add(new PlayedCard(pc.card, player, pc.x, pc.y));
+                        place(new PlayedCard(pc.card, player, pc.x, pc.y));
+                    for (GameListener l : listeners) {
+                        l.scoreChanged(player, multiplier * moveScore, score.get(player));
+                    }
+                    deal_to_player(player);
+                    log.log(GameLog.Event.MOVE, player.getName());
                     passCounter = 0;
                     drawCounter = 0;
                 } else {
                     passCounter++;
-                    System.err.println("Some cards are not in " + player.getName() + "'s hand. Failed to Discard");
-                    System.err.flush();
+                    log.log(GameLog.Event.BAD_CARDS, player.getName());
                 }
 
             } else {
                 passCounter++;
-                System.err.println(player.getName() + " tried to play an illegal move.");
-                System.err.flush();
+                log.log(GameLog.Event.ILLEGAL_MOVE, player.getName());
             }
         }
-        if (drawCounter >= 4 || passCounter >= 2) {
-            System.err.println("Game over");
-            System.err.flush();
-            gameOver = true;
-        }
     }
 
     void step() {
@@ -257,18 +726,20 @@ public class Manager {
         for (Player w : winners) {
             winRecord.put(w.getName(), winRecord.get(w.getName()) + 1);
         }
-        if (winners.size() > 1) {
-            System.err.print("Draw between players ");
-        } else {
-            System.err.print("Winner is ");
+        List<Player> result = Collections.unmodifiableList(winners);
+        for (GameListener l : listeners) {
+            l.gameOver(result);
         }
-        for (Player w : winners) {
-            System.err.print(w.getName());
-            if (!(winners.get(winners.size() - 1) == w))
-                System.err.print(" and ");
+        GameLog.Event event = winners.size() > 1 ? GameLog.Event.DRAW : GameLog.Event.WIN;
+        String names = null;
+        if (log.isWritten(event)) {
+            StringJoiner joiner = new StringJoiner(" and ");
+            for (Player w : winners) {
+                joiner.add(w.getName());
+            }
+            names = joiner.toString();
         }
-        System.err.println(".");
-        System.err.flush();
+        log.log(event, names);
     }
 
     public void printWinRecord() {
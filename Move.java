@@ -0,0 +1,184 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable move of one to four cards, packed into two longs.
+ * <p>
+ * Each card is a 32 bit slot holding the card id plus one (so an empty slot
+ * is zero) and its coordinates offset to be non-negative. The slots are kept
+ * in increasing order, so the same placement always has the same encoding
+ * whatever order its cards were listed in, and two moves are equal exactly
+ * when their longs are.
+ */
+public final class Move {
+
+    private static final int MAX_CARDS = 4;
+    private static final int COORD_BITS = 12;
+    private static final int COORD_OFFSET = 1 << (COORD_BITS - 1);
+    private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final long SLOT_MASK = 0xFFFFFFFFL;
+
+    private final long lo;
+    private final long hi;
+
+    private Move(long lo, long hi) {
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Rebuild a move from its encoding.
+     *
+     * @param lo the first two slots
+     * @param hi the last two slots
+     * @return the move
+     */
+    public static Move fromBits(long lo, long hi) {
+        return new Move(lo, hi);
+    }
+
+    /**
+     * Make a move from the first n cards given by id and position.
+     *
+     * @param ids the card ids
+     * @param xs the x coordinates
+     * @param ys the y coordinates
+     * @param n the number of cards, between 1 and 4
+     * @return the move
+     */
+    public static Move of(int[] ids, int[] xs, int[] ys, int n) {
+        if (n < 1 || n > MAX_CARDS) {
+            throw new IllegalArgumentException("A move has between 1 and 4 cards: " + n);
+        }
+        int[] slots = new int[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = slot(ids[i], xs[i], ys[i]);
+        }
+        Arrays.sort(slots);
+        long lo = 0L;
+        long hi = 0L;
+        for (int i = 0; i < n; i++) {
+            long s = slots[i] & SLOT_MASK;
+            if (i < 2) {
+                lo |= s << (32 * i);
+            } else {
+                hi |= s << (32 * (i - 2));
+            }
+        }
+        return new Move(lo, hi);
+    }
+
+    public static Move of(List<PlayedCard> cards) {
+        int n = cards.size();
+        int[] ids = new int[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            PlayedCard c = cards.get(i);
+            ids[i] = c.card.id();
+            xs[i] = c.x;
+            ys[i] = c.y;
+        }
+        return of(ids, xs, ys, n);
+    }
+
+    private static int slot(int id, int x, int y) {
+        int px = x + COORD_OFFSET;
+        int py = y + COORD_OFFSET;
+        if ((px & ~COORD_MASK) != 0 || (py & ~COORD_MASK) != 0) {
+            throw new IllegalArgumentException("Position out of range for a move: (" + x + "," + y + ")");
+        }
+        return ((id + 1) << (2 * COORD_BITS)) | (px << COORD_BITS) | py;
+    }
+
+    private int slot(int i) {
+        return (int) ((i < 2 ? lo >>> (32 * i) : hi >>> (32 * (i - 2))) & SLOT_MASK);
+    }
+
+    public long lo() {
+        return lo;
+    }
+
+    public long hi() {
+        return hi;
+    }
+
+    /**
+     * The number of cards in the move.
+     *
+     * @return the size of the move
+     */
+    public int size() {
+        int n = 0;
+        while (n < MAX_CARDS && slot(n) != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    public int cardId(int i) {
+        return (slot(i) >>> (2 * COORD_BITS)) - 1;
+    }
+
+    public Card card(int i) {
+        return Card.fromId(cardId(i));
+    }
+
+    public int x(int i) {
+        return ((slot(i) >>> COORD_BITS) & COORD_MASK) - COORD_OFFSET;
+    }
+
+    public int y(int i) {
+        return (slot(i) & COORD_MASK) - COORD_OFFSET;
+    }
+
+    /**
+     * The cards used by the move as a card set mask.
+     *
+     * @return the mask of the cards
+     */
+    public long cardBits() {
+        long bits = 0L;
+        for (int i = 0; i < size(); i++) {
+            bits |= 1L << cardId(i);
+        }
+        return bits;
+    }
+
+    /**
+     * Convert the move to the form expected from Player.makeMove().
+     *
+     * @param p the player making the move
+     * @return the cards of the move
+     */
+    public ArrayList<PlayedCard> toPlayedCards(Player p) {
+        int n = size();
+        ArrayList<PlayedCard> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new PlayedCard(card(i), p, x(i), y(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return LongSet.mix(lo * 31 + hi);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Move)) {
+            return false;
+        }
+        Move other = (Move) obj;
+        return lo == other.lo && hi == other.hi;
+    }
+
+    @Override
+    public String toString() {
+        return toPlayedCards(null).toString();
+    }
+}
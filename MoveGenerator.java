@@ -0,0 +1,971 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Generates every legal move for a hand by working along lines.
+ * <p>
+ * Any legal move puts its cards into a single row or column, and at least one
+ * of them is on an anchor (an empty position next to a played card). Since a
+ * line holds at most four cards, the first card of the move lies at most
+ * three places before that anchor. So for each anchor and direction the
+ * generator tries each of those start positions, and from a start walks
+ * forward over the next empty positions (jumping any cards already on the
+ * board), placing each ordering of 1 to 4 hand cards. A move is found only
+ * from its own first position and direction, and single cards are placed
+ * only in rows, so each legal move is generated exactly once.
+ * <p>
+ * Given a fork/join pool, the generator can split the start positions (and
+ * the scoring of moves) into tasks. Each task fills its own move set and the
+ * sets are joined in the order of the start positions, so the moves come out
+ * exactly as they would from a single thread.
+ */
+public class MoveGenerator {
+
+    private static final int MAX_LINE = 4;
+    private static final int MAX_VALUE = 4;
+    // A run is summarised by its colour, shape and value masks and value sum.
+    private static final int RUN = 4;
+
+    private final Board board;
+    // Supplies the cards allowed at each spot, if the board is in a graph.
+    private final BoardGraph graph;
+    // The number of moves found, counting any repeats, used when checking.
+    int generated;
+
+    // Work is split over the pool when there is more than threshold of it.
+    private ForkJoinPool pool;
+    private int threshold = DEFAULT_THRESHOLD;
+    private Deadline deadline = Deadline.none();
+
+    /**
+     * The default number of start positions or moves below which the work is
+     * not split into tasks.
+     */
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    public MoveGenerator(Board board) {
+        this(board, null);
+    }
+
+    private MoveGenerator(Board board, BoardGraph graph) {
+        this.board = board;
+        this.graph = graph;
+    }
+
+    /**
+     * A generator which takes the cards allowed across each line from the
+     * masks kept by the graph rather than working them out from the board.
+     *
+     * @param graph the board graph
+     */
+    public MoveGenerator(BoardGraph graph) {
+        this(graph.getBoard(), graph);
+    }
+
+    /**
+     * Generate all the legal moves for the hand.
+     *
+     * @param anchors the packed positions of the empty spots next to cards
+     * @param count the number of anchors
+     * @param hand the cards available
+     * @return the legal moves
+     */
+    public MoveSet generate(long[] anchors, int count, List<Card> hand) {
+        long[] starts = new long[2 * MAX_LINE * count];
+        boolean[] rows = new boolean[starts.length];
+        int n = findStarts(anchors, count, starts, rows);
+
+        Card[] cards = playable(hand);
+        if (pool == null || n <= threshold) {
+            return generateFrom(cards, starts, rows, 0, n);
+        }
+        GenerateTask task = new GenerateTask(cards, starts, rows, 0, n);
+        MoveSet moves = pool.invoke(task);
+        generated += task.generated;
+        return moves;
+    }
+
+    /*
+     * Find the distinct positions and directions a move could start from,
+     * rows and columns in turn, returning how many there are.
+     */
+    private int findStarts(long[] anchors, int count, long[] starts, boolean[] rows) {
+        int n = 0;
+        LongSet rowStarts = new LongSet(count);
+        LongSet colStarts = new LongSet(count);
+        for (int i = 0; i < count; i++) {
+            int x = Board.xOf(anchors[i]);
+            int y = Board.yOf(anchors[i]);
+            for (int back = 0; back < MAX_LINE; back++) {
+                if (board.isEmpty(x - back, y) && rowStarts.add(Board.pack(x - back, y))) {
+                    rows[n] = true;
+                    starts[n++] = Board.pack(x - back, y);
+                }
+                if (board.isEmpty(x, y - back) && colStarts.add(Board.pack(x, y - back))) {
+                    starts[n++] = Board.pack(x, y - back);
+                }
+            }
+        }
+        return n;
+    }
+
+    // Generate the moves from the starts between from and to.
+    private MoveSet generateFrom(Card[] cards, long[] starts, boolean[] rows, int from, int to) {
+        final MoveSet moves = new MoveSet(4 * (to - from));
+        Sink sink = new Sink() {
+            @Override
+            public void accept(Move move, int score) {
+                generated++;
+                moves.add(move);
+            }
+        };
+        generateFrom(new Line(cards, false), starts, rows, from, to, sink);
+        return moves;
+    }
+
+    private void generateFrom(Line line, long[] starts, boolean[] rows, int from, int to, Sink sink) {
+        for (int i = from; i < to && !deadline.isExpired(); i++) {
+            if (rows[i]) {
+                generateFrom(line, Board.xOf(starts[i]), Board.yOf(starts[i]), 1, 0, sink);
+            } else {
+                generateFrom(line, Board.xOf(starts[i]), Board.yOf(starts[i]), 0, 1, sink);
+            }
+        }
+    }
+
+    /**
+     * Receives moves from a search as they are found.
+     */
+    public interface Sink {
+
+        /**
+         * Take a legal move.
+         *
+         * @param move the move
+         * @param score its score, as from Utilities.evaluate()
+         */
+        void accept(Move move, int score);
+
+        /**
+         * The score a move must beat to be of interest. The search leaves out
+         * moves which do not score more than this, and skips any placements
+         * which cannot lead to one that does. It is asked again as the
+         * search goes on, so it may rise.
+         *
+         * @return the score to beat
+         */
+        default int threshold() {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Search the legal moves for the hand, giving each to the sink with its
+     * score as it is found, without collecting them. Moves are found in the
+     * same order as by generate(), less any that the sink's threshold rules
+     * out. The search runs in the calling thread.
+     *
+     * @param anchors the packed positions of the empty spots next to cards
+     * @param count the number of anchors
+     * @param hand the cards available
+     * @param sink the receiver of the moves
+     */
+    public void search(long[] anchors, int count, List<Card> hand, Sink sink) {
+        long[] starts = new long[2 * MAX_LINE * count];
+        boolean[] rows = new boolean[starts.length];
+        int n = findStarts(anchors, count, starts, rows);
+        generateFrom(new Line(playable(hand), true), starts, rows, 0, n, sink);
+    }
+
+    public void search(List<Card> hand, Sink sink) {
+        long[] anchors = board.frontier();
+        search(anchors, anchors.length, hand, sink);
+    }
+
+    /**
+     * Find the k highest scoring moves for the hand, without generating the
+     * moves which cannot be among them.
+     *
+     * @param anchors the packed positions of the empty spots next to cards
+     * @param count the number of anchors
+     * @param hand the cards available
+     * @param k the number of moves wanted
+     * @return up to k moves, best first, with equal scores in the order
+     * generate() would give them
+     */
+    public List<Move> best(long[] anchors, int count, List<Card> hand, int k) {
+        TopMoves top = new TopMoves(k);
+        search(anchors, count, hand, top);
+        return top.moves();
+    }
+
+    public List<Move> best(List<Card> hand, int k) {
+        long[] anchors = board.frontier();
+        return best(anchors, anchors.length, hand, k);
+    }
+
+    /*
+     * Keeps the k best moves seen, in order of score. A move only displaces
+     * another if it scores more, so of equal moves the first seen is kept.
+     */
+    private static final class TopMoves implements Sink {
+
+        private final Move[] moves;
+        private final int[] scores;
+        private int size;
+
+        TopMoves(int k) {
+            if (k < 1) {
+                throw new IllegalArgumentException("At least one move must be wanted: " + k);
+            }
+            moves = new Move[k];
+            scores = new int[k];
+        }
+
+        @Override
+        public void accept(Move move, int score) {
+            if (score <= threshold()) {
+                return;
+            }
+            int i = Math.min(size, moves.length - 1);
+            while (i > 0 && scores[i - 1] < score) {
+                moves[i] = moves[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            moves[i] = move;
+            scores[i] = score;
+            size = Math.min(size + 1, moves.length);
+        }
+
+        @Override
+        public int threshold() {
+            return size < moves.length ? Integer.MIN_VALUE : scores[size - 1];
+        }
+
+        List<Move> moves() {
+            return new ArrayList<>(Arrays.asList(moves).subList(0, size));
+        }
+    }
+
+    /*
+     * Generates the moves from a range of starts, splitting it in half until
+     * it is no longer than the threshold. Each half has its own generator,
+     * so they share nothing but the board.
+     */
+    private final class GenerateTask extends RecursiveTask<MoveSet> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Card[] cards;
+        private final long[] starts;
+        private final boolean[] rows;
+        private final int from;
+        private final int to;
+        int generated;
+
+        GenerateTask(Card[] cards, long[] starts, boolean[] rows, int from, int to) {
+            this.cards = cards;
+            this.starts = starts;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MoveSet compute() {
+            if (to - from <= threshold) {
+                MoveGenerator part = new MoveGenerator(board, graph);
+                part.deadline = deadline;
+                MoveSet moves = part.generateFrom(cards, starts, rows, from, to);
+                generated = part.generated;
+                return moves;
+            }
+            int mid = (from + to) >>> 1;
+            GenerateTask left = new GenerateTask(cards, starts, rows, from, mid);
+            GenerateTask right = new GenerateTask(cards, starts, rows, mid, to);
+            right.fork();
+            MoveSet moves = left.compute();
+            moves.addAll(right.join());
+            generated = left.generated + right.generated;
+            return moves;
+        }
+    }
+
+    /**
+     * Split generation and scoring over a fork/join pool. The results are
+     * the same as without a pool.
+     *
+     * @param pool the pool to use, or null to work in the calling thread
+     * @param threshold the number of start positions or moves below which
+     * the work is not split
+     */
+    public void setParallel(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("The threshold must be positive: " + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Stop generating and scoring moves once the deadline has passed. The
+     * moves found by then are kept, and those not yet scored score ILLEGAL.
+     *
+     * @param deadline the deadline
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Score each of the moves on the generator's board.
+     *
+     * @param moves the moves
+     * @return the score of each move, in the order of the set
+     */
+    public int[] score(MoveSet moves) {
+        return score(moves, null);
+    }
+
+    /**
+     * Score each of the moves on the generator's board, giving the sink the
+     * best of each batch of moves as soon as the batch is scored. With a
+     * pool the sink is called from its threads, perhaps at once.
+     *
+     * @param moves the moves
+     * @param sink the receiver of the best moves so far, or null
+     * @return the score of each move, in the order of the set
+     */
+    public int[] score(MoveSet moves, Sink sink) {
+        int[] scores = new int[moves.size()];
+        ScoreTask task = new ScoreTask(moves, scores, sink, 0, scores.length);
+        if (pool == null || scores.length <= threshold) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return scores;
+    }
+
+    /*
+     * Scores a range of moves into the matching range of an array.
+     */
+    private final class ScoreTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MoveSet moves;
+        private final int[] scores;
+        private final Sink sink;
+        private final int from;
+        private final int to;
+
+        ScoreTask(MoveSet moves, int[] scores, Sink sink, int from, int to) {
+            this.moves = moves;
+            this.scores = scores;
+            this.sink = sink;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                int best = -1;
+                for (int i = from; i < to; i++) {
+                    if (deadline.isExpired()) {
+                        Arrays.fill(scores, i, to, Utilities.ILLEGAL);
+                        break;
+                    }
+                    scores[i] = Utilities.evaluate(moves.get(i), board).getScore();
+                    if (best < 0 || scores[i] > scores[best]) {
+                        best = i;
+                    }
+                }
+                if (sink != null && best >= 0 && scores[best] != Utilities.ILLEGAL) {
+                    sink.accept(moves.get(best), scores[best]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ScoreTask(moves, scores, sink, from, mid), new ScoreTask(moves, scores, sink, mid, to));
+        }
+    }
+
+    /**
+     * Generate all the legal moves for the hand, anchored on the board's
+     * frontier.
+     *
+     * @param hand the cards available
+     * @return the legal moves
+     */
+    public MoveSet generate(List<Card> hand) {
+        long[] anchors = board.frontier();
+        return generate(anchors, anchors.length, hand);
+    }
+
+    // The hand cards that could be played, i.e. those not already on the board.
+    private Card[] playable(List<Card> hand) {
+        ArrayList<Card> result = new ArrayList<>(hand.size());
+        for (Card c : hand) {
+            if ((board.cardBits() & CardSet.bit(c)) == 0) {
+                result.add(c);
+            }
+        }
+        return result.toArray(new Card[0]);
+    }
+
+    /*
+     * The positions along a line from a start where cards of a move would go,
+     * with the board cards around them summarised as a count and the colour,
+     * shape and value masks and value sum of the cards.
+     */
+    private static final class Line {
+
+        final Card[] hand;
+        // Whether the moves found are to be scored.
+        final boolean scoring;
+        int positions;
+        boolean horizontal;
+        final int[] xs = new int[MAX_LINE];
+        final int[] ys = new int[MAX_LINE];
+        // Board cards along the line before each position, back to the start of the block.
+        final int[] before = new int[MAX_LINE];
+        final int[] beforeMasks = new int[RUN * MAX_LINE];
+        // Board cards along the line immediately after each position.
+        final int[] after = new int[MAX_LINE];
+        final int[] afterMasks = new int[RUN * MAX_LINE];
+        // The cards allowed at each position by the board cards across the
+        // line, and whether there are any such cards.
+        final long[] crossAllowed = new long[MAX_LINE];
+        final boolean[] crossTouch = new boolean[MAX_LINE];
+        // The ids of the hand cards placed at each position so far.
+        final int[] ids = new int[MAX_LINE];
+
+        // When scoring, the number and value sum of the board cards across
+        // the line at each position.
+        final int[] crossCount = new int[MAX_LINE];
+        final int[] crossSum = new int[MAX_LINE];
+        // The value of the hand cards placed up to each position, and the
+        // score and multiplier of the cross lines they make.
+        final int[] placedValues = new int[MAX_LINE];
+        final int[] crossScore = new int[MAX_LINE];
+        final int[] crossMultiplier = new int[MAX_LINE];
+
+        // Whether all four hand cards could be played together.
+        final boolean handFour;
+
+        Line(Card[] hand, boolean scoring) {
+            this.hand = hand;
+            this.scoring = scoring;
+            int colours = 0;
+            int shapes = 0;
+            int values = 0;
+            for (Card c : hand) {
+                colours |= Utilities.colourBit(c.id());
+                shapes |= Utilities.shapeBit(c.id());
+                values |= Utilities.valueBit(c.id());
+            }
+            handFour = LineTable.isSet(hand.length, colours, shapes, values) && hand.length == MAX_LINE;
+        }
+    }
+
+    /*
+     * Generate the moves whose first card is at (x0, y0) and which head in
+     * direction (dx, dy).
+     */
+    private void generateFrom(Line line, int x0, int y0, int dx, int dy, Sink sink) {
+        Arrays.fill(line.beforeMasks, 0);
+        Arrays.fill(line.afterMasks, 0);
+        line.horizontal = dx == 1;
+
+        int[] masks = new int[RUN];
+        int inLine = addRun(x0, y0, -dx, -dy, masks, 0);
+        int n = 0;
+        int x = x0;
+        int y = y0;
+        while (n < MAX_LINE && n < line.hand.length && inLine + n + 1 <= MAX_LINE) {
+            line.xs[n] = x;
+            line.ys[n] = y;
+            line.before[n] = inLine;
+            System.arraycopy(masks, 0, line.beforeMasks, RUN * n, RUN);
+            if (graph != null && !line.scoring) {
+                line.crossAllowed[n] = line.horizontal ? graph.columnCards(x, y) : graph.rowCards(x, y);
+                line.crossTouch[n] = !board.isEmpty(x + dy, y + dx) || !board.isEmpty(x - dy, y - dx);
+            } else {
+                int[] cross = new int[RUN];
+                int count = addRun(x, y, dy, dx, cross, 0) + addRun(x, y, -dy, -dx, cross, 0);
+                line.crossAllowed[n] = graph != null
+                        ? (line.horizontal ? graph.columnCards(x, y) : graph.rowCards(x, y))
+                        : LineTable.extensions(count, cross[0], cross[1], cross[2]);
+                line.crossTouch[n] = count > 0;
+                line.crossCount[n] = count;
+                line.crossSum[n] = cross[3];
+            }
+            line.after[n] = addRun(x, y, dx, dy, line.afterMasks, RUN * n);
+            masks[0] |= line.afterMasks[RUN * n];
+            masks[1] |= line.afterMasks[RUN * n + 1];
+            masks[2] |= line.afterMasks[RUN * n + 2];
+            masks[3] += line.afterMasks[RUN * n + 3];
+            inLine += line.after[n];
+            x += (line.after[n] + 1) * dx;
+            y += (line.after[n] + 1) * dy;
+            n++;
+        }
+        line.positions = n;
+        if (!line.scoring || upperBound(line, -1, 0, 0, 0, 0) > sink.threshold()) {
+            place(line, 0, 0, 0, 0, 0, false, sink);
+        }
+    }
+
+    /*
+     * Add the attribute masks and value sum of the run of board cards next to
+     * (x, y) in direction (dx, dy) into masks, starting at offset, returning
+     * its length.
+     */
+    private int addRun(int x, int y, int dx, int dy, int[] masks, int offset) {
+        Run run = dx != 0 ? board.rowRun(x + dx, y) : board.columnRun(x, y + dy);
+        if (run == null) {
+            return 0;
+        }
+        masks[offset] |= run.colours;
+        masks[offset + 1] |= run.shapes;
+        masks[offset + 2] |= run.values;
+        masks[offset + 3] += run.sum;
+        return run.length;
+    }
+
+    /*
+     * Try each unused hand card at the next position. The colour, shape and
+     * value masks are those of the hand cards placed so far, and touching
+     * records whether any of them has a board card across the line.
+     */
+    private void place(Line line, int depth, int used, int colours, int shapes, int values,
+                       boolean touching, Sink sink) {
+        if (depth == line.positions) {
+            return;
+        }
+        int k = RUN * depth;
+        // Each card must make a set with the cards across the line, and with
+        // the cards so far along the line.
+        long allowed = line.crossAllowed[depth] & LineTable.extensions(line.before[depth] + depth,
+                colours | line.beforeMasks[k], shapes | line.beforeMasks[k + 1], values | line.beforeMasks[k + 2]);
+        for (int i = 0; i < line.hand.length; i++) {
+            int id = line.hand[i].id();
+            if ((used & (1 << i)) != 0 || (allowed & (1L << id)) == 0) {
+                continue;
+            }
+            int c = colours | Utilities.colourBit(id);
+            int s = shapes | Utilities.shapeBit(id);
+            int v = values | Utilities.valueBit(id);
+            line.ids[depth] = id;
+            boolean touches = touching || line.crossTouch[depth];
+            if (line.scoring) {
+                addScore(line, depth, line.hand[i].value);
+            }
+
+            // The whole block, including any board cards after the last
+            // position, must be a set, and the move must touch the board.
+            // Single cards are only placed in rows, so they are found once.
+            int block = line.before[depth] + depth + 1 + line.after[depth];
+            if (block <= MAX_LINE
+                    && (touches || block > depth + 1)
+                    && (line.horizontal || depth > 0)
+                    && LineTable.isSet(block, c | line.beforeMasks[k] | line.afterMasks[k],
+                    s | line.beforeMasks[k + 1] | line.afterMasks[k + 1],
+                    v | line.beforeMasks[k + 2] | line.afterMasks[k + 2])) {
+                int score = line.scoring ? score(line, depth, block) : Utilities.ILLEGAL;
+                if (!line.scoring || score > sink.threshold()) {
+                    sink.accept(Move.of(line.ids, line.xs, line.ys, depth + 1), score);
+                }
+            }
+            if (canContinue(line, depth + 1, used | (1 << i), c, s, v)
+                    && (!line.scoring || upperBound(line, depth, used | (1 << i), c, s, v) > sink.threshold())) {
+                place(line, depth + 1, used | (1 << i), c, s, v, touches, sink);
+            }
+        }
+    }
+
+    /*
+     * Whether a hand card could still go at position j after the cards placed
+     * so far, whose masks are given. The block there must have at most four
+     * cards, and if it has exactly four the unused hand cards must be able to
+     * complete it to a set. Blocks only grow along the line, so if nothing
+     * can go at j nothing can go further on either.
+     */
+    private static boolean canContinue(Line line, int j, int used, int colours, int shapes, int values) {
+        if (j == line.positions) {
+            return false;
+        }
+        int block = line.before[j] + j + 1 + line.after[j];
+        if (block != MAX_LINE) {
+            return block < MAX_LINE;
+        }
+        long unused = 0L;
+        for (int i = 0; i < line.hand.length; i++) {
+            if ((used & (1 << i)) == 0) {
+                unused |= 1L << line.hand[i].id();
+            }
+        }
+        int k = RUN * j;
+        return LineTable.canReachFour(block - 1, colours | line.beforeMasks[k] | line.afterMasks[k],
+                shapes | line.beforeMasks[k + 1] | line.afterMasks[k + 1],
+                values | line.beforeMasks[k + 2] | line.afterMasks[k + 2], unused);
+    }
+
+    // Record the score of the cross line made by a card of the given value.
+    private static void addScore(Line line, int depth, int value) {
+        int placed = depth == 0 ? 0 : line.placedValues[depth - 1];
+        int cross = depth == 0 ? 0 : line.crossScore[depth - 1];
+        int multiplier = depth == 0 ? 1 : line.crossMultiplier[depth - 1];
+        line.placedValues[depth] = placed + value;
+        if (line.crossCount[depth] > 0) {
+            cross += line.crossSum[depth] + value;
+            if (line.crossCount[depth] == MAX_LINE - 1) {
+                multiplier *= 2;
+            }
+        }
+        line.crossScore[depth] = cross;
+        line.crossMultiplier[depth] = multiplier;
+    }
+
+    // The score of the move of the cards placed up to depth, whose main line
+    // has block cards.
+    private static int score(Line line, int depth, int block) {
+        int k = RUN * depth;
+        int sum = line.crossScore[depth];
+        if (block > 1) {
+            sum += line.beforeMasks[k + 3] + line.placedValues[depth] + line.afterMasks[k + 3];
+        }
+        int multiplier = line.crossMultiplier[depth];
+        if (depth + 1 == MAX_LINE) {
+            multiplier *= 2;
+        }
+        if (block == MAX_LINE) {
+            multiplier *= 2;
+        }
+        return sum * multiplier;
+    }
+
+    /*
+     * An optimistic bound on the score of any move that adds more of the
+     * unused cards after those placed up to depth: every unused card counts
+     * in full on the main line and at its best on a cross line, and every
+     * doubling that could still happen does, except that the main line is
+     * only doubled for four cards if the unused cards can complete it to a
+     * set. The masks are those of the cards placed so far. A depth of -1
+     * bounds every move from the start of the line.
+     */
+    private static int upperBound(Line line, int depth, int used, int colours, int shapes, int values) {
+        int unused = 0;
+        int unusedValues = 0;
+        long unusedIds = 0L;
+        for (int i = 0; i < line.hand.length; i++) {
+            if ((used & (1 << i)) == 0) {
+                unused++;
+                unusedValues += line.hand[i].value;
+                unusedIds |= 1L << line.hand[i].id();
+            }
+        }
+        int more = Math.min(unused, line.positions - depth - 1);
+        if (more <= 0) {
+            return Integer.MIN_VALUE;
+        }
+        // The board cards on the main line only grow as it gets longer.
+        int last = depth + more;
+        int sum = line.beforeMasks[RUN * last + 3] + line.afterMasks[RUN * last + 3] + unusedValues;
+        int multiplier = 1;
+        if (depth >= 0) {
+            sum += line.placedValues[depth] + line.crossScore[depth];
+            multiplier = line.crossMultiplier[depth];
+        }
+        boolean four = false;
+        for (int j = depth + 1; j <= last; j++) {
+            if (line.crossCount[j] > 0) {
+                sum += line.crossSum[j] + MAX_VALUE;
+                if (line.crossCount[j] == MAX_LINE - 1) {
+                    multiplier *= 2;
+                }
+            }
+            if (!four && line.before[j] + j + 1 + line.after[j] == MAX_LINE) {
+                int k = RUN * j;
+                four = LineTable.canReachFour(line.before[j] + depth + 1 + line.after[j],
+                        colours | line.beforeMasks[k] | line.afterMasks[k],
+                        shapes | line.beforeMasks[k + 1] | line.afterMasks[k + 1],
+                        values | line.beforeMasks[k + 2] | line.afterMasks[k + 2], unusedIds);
+            }
+        }
+        if (last + 1 == MAX_LINE && line.handFour) {
+            multiplier *= 2;
+        }
+        if (four) {
+            multiplier *= 2;
+        }
+        return sum * multiplier;
+    }
+
+    /**
+     * Find all legal moves the slow way: try every ordering of hand cards on
+     * every set of positions near the board, within a window wider than any
+     * line. Used to check the generator.
+     *
+     * @param board the board
+     * @param hand the cards available
+     * @return the legal moves
+     */
+    static MoveSet bruteForce(Board board, List<Card> hand) {
+        final int window = 7;
+        int xMin = Integer.MAX_VALUE;
+        int xMax = Integer.MIN_VALUE;
+        int yMin = Integer.MAX_VALUE;
+        int yMax = Integer.MIN_VALUE;
+        for (PlayedCard c : board) {
+            xMin = Math.min(xMin, c.x);
+            xMax = Math.max(xMax, c.x);
+            yMin = Math.min(yMin, c.y);
+            yMax = Math.max(yMax, c.y);
+        }
+        MoveSet result = new MoveSet();
+        for (int x = xMin - window; x <= xMax + 1; x++) {
+            for (int y = yMin - window; y <= yMax + 1; y++) {
+                for (int subset = 0; subset < (1 << (window - 1)); subset++) {
+                    for (int dir = 0; dir < 2; dir++) {
+                        ArrayList<int[]> cells = new ArrayList<>();
+                        cells.add(new int[]{x, y});
+                        for (int j = 1; j < window; j++) {
+                            if ((subset & (1 << (j - 1))) != 0) {
+                                cells.add(dir == 0 ? new int[]{x + j, y} : new int[]{x, y + j});
+                            }
+                        }
+                        if (cells.size() <= hand.size()) {
+                            bruteAssign(board, hand, cells, new ArrayList<>(), 0, result);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void bruteAssign(Board board, List<Card> hand, ArrayList<int[]> cells,
+                                    ArrayList<PlayedCard> move, int used, MoveSet result) {
+        if (move.size() == cells.size()) {
+            if (Utilities.isLegalMove(move, board)) {
+                result.add(Move.of(move));
+            }
+            return;
+        }
+        int[] cell = cells.get(move.size());
+        for (int i = 0; i < hand.size(); i++) {
+            if ((used & (1 << i)) == 0) {
+                move.add(new PlayedCard(hand.get(i), null, cell[0], cell[1]));
+                bruteAssign(board, hand, cells, move, used | (1 << i), result);
+                move.remove(move.size() - 1);
+            }
+        }
+    }
+
+    /*
+     * Check that searching gives the generated moves in order with their true
+     * scores, and that the best moves found with pruning are the best of the
+     * generated moves.
+     */
+    private static void checkSearch(MoveGenerator generator, List<Card> hand, MoveSet moves, Random random) {
+        final MoveSet found = new MoveSet();
+        final ArrayList<Integer> scores = new ArrayList<>();
+        generator.search(hand, new Sink() {
+            @Override
+            public void accept(Move move, int score) {
+                found.add(move);
+                scores.add(score);
+            }
+        });
+        if (!sameOrder(moves, found)) {
+            throw new IllegalStateException("Search differs from generation");
+        }
+        Integer[] order = new Integer[moves.size()];
+        for (int i = 0; i < order.length; i++) {
+            if (scores.get(i) != Utilities.evaluate(moves.get(i), generator.board).getScore()) {
+                throw new IllegalStateException("Wrong score for " + moves.get(i));
+            }
+            order[i] = i;
+        }
+        // A stable sort keeps equal scores in the order they were found.
+        Arrays.sort(order, (a, b) -> scores.get(b) - scores.get(a));
+        int k = 1 + random.nextInt(5);
+        List<Move> best = generator.best(hand, k);
+        for (int i = 0; i < Math.min(k, order.length); i++) {
+            if (i >= best.size() || !best.get(i).equals(moves.get(order[i]))) {
+                throw new IllegalStateException("Wrong best moves " + best);
+            }
+        }
+        if (best.size() != Math.min(k, order.length)) {
+            throw new IllegalStateException("Wrong number of best moves " + best);
+        }
+    }
+
+    private static boolean sameOrder(MoveSet a, MoveSet b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).equals(b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Count the empty positions next to a card by looking round every card.
+    private static int countFrontier(Board board) {
+        LongSet seen = new LongSet(board.size());
+        for (PlayedCard c : board) {
+            int[][] around = {{c.x + 1, c.y}, {c.x - 1, c.y}, {c.x, c.y + 1}, {c.x, c.y - 1}};
+            for (int[] p : around) {
+                if (board.isEmpty(p[0], p[1])) {
+                    seen.add(Board.pack(p[0], p[1]));
+                    if (!board.isFrontier(p[0], p[1])) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    /*
+     * Check LineTable.canReachFour against trying every way of adding the
+     * available cards to the line.
+     */
+    private static void checkReachFour(List<Card> line, List<Card> available) {
+        int colours = 0;
+        int shapes = 0;
+        int values = 0;
+        for (Card c : line) {
+            colours |= Utilities.colourBit(c.id());
+            shapes |= Utilities.shapeBit(c.id());
+            values |= Utilities.valueBit(c.id());
+        }
+        if (!bruteSet(line)) {
+            return;
+        }
+        long ids = 0L;
+        for (Card c : available) {
+            ids |= 1L << c.id();
+        }
+        boolean expected = false;
+        for (int subset = 0; subset < 1 << available.size() && !expected; subset++) {
+            if (line.size() + Integer.bitCount(subset) != MAX_LINE) {
+                continue;
+            }
+            ArrayList<Card> four = new ArrayList<>(line);
+            for (int i = 0; i < available.size(); i++) {
+                if ((subset & (1 << i)) != 0) {
+                    four.add(available.get(i));
+                }
+            }
+            expected = bruteSet(four);
+        }
+        if (LineTable.canReachFour(line.size(), colours, shapes, values, ids) != expected) {
+            throw new IllegalStateException("Line table wrong for " + line + " with " + available);
+        }
+    }
+
+    // Whether each attribute is the same for all the cards or different for each.
+    private static boolean bruteSet(List<Card> cards) {
+        Set<Colour> colours = new HashSet<>();
+        Set<Shape> shapes = new HashSet<>();
+        Set<Integer> values = new HashSet<>();
+        for (Card c : cards) {
+            colours.add(c.colour);
+            shapes.add(c.shape);
+            values.add(c.value);
+        }
+        int n = cards.size();
+        return (colours.size() == 1 || colours.size() == n) && (shapes.size() == 1 || shapes.size() == n)
+                && (values.size() == 1 || values.size() == n);
+    }
+
+    /**
+     * Plays random games, checking at every turn that the generator, both on
+     * its own and using the masks kept by a board graph, finds exactly the
+     * moves found by brute force, and finds each only once, that working in
+     * parallel or searching gives the same moves in the same order, that the
+     * search finds the best moves, that the line table knows which lines can
+     * be completed, and that the board's frontier is right. The
+     * arguments are an optional seed and number of games.
+     */
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 1);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int checked = 0;
+        for (int game = 0; game < games; game++) {
+            ArrayList<Card> deck = CardSet.ALL.toList();
+            Collections.shuffle(deck, random);
+            Board board = new Board();
+            board.add(new PlayedCard(deck.remove(0), null, 0, 0));
+            BoardGraph graph = new BoardGraph();
+            while (deck.size() >= 4) {
+                List<Card> hand = new ArrayList<>(deck.subList(0, 4));
+                MoveGenerator generator = new MoveGenerator(board);
+                MoveSet moves = generator.generate(hand);
+                if (generator.generated != moves.size()) {
+                    throw new IllegalStateException("Some moves were generated twice");
+                }
+                MoveGenerator parallel = new MoveGenerator(board);
+                parallel.setParallel(ForkJoinPool.commonPool(), 1 + random.nextInt(8));
+                MoveSet inParallel = parallel.generate(hand);
+                if (!sameOrder(moves, inParallel) || parallel.generated != generator.generated
+                        || !Arrays.equals(generator.score(moves), parallel.score(moves))) {
+                    throw new IllegalStateException("Parallel generation differs");
+                }
+                checkSearch(generator, hand, moves, random);
+                checkReachFour(deck.subList(4, 4 + random.nextInt(Math.min(4, deck.size() - 3))), hand);
+                graph.sync(board.asList());
+                MoveSet fromGraph = graph.computeMoves(new ArrayList<>(hand));
+                MoveSet singles = graph.singleCardMoves(CardSet.of(hand));
+                MoveSet expected = bruteForce(board, hand);
+                boolean same = expected.size() == moves.size() && expected.size() == fromGraph.size();
+                int expectedSingles = 0;
+                for (Move m : expected) {
+                    same &= moves.contains(m) && fromGraph.contains(m);
+                    if (m.size() == 1) {
+                        expectedSingles++;
+                        same &= singles.contains(m);
+                    }
+                }
+                same &= singles.size() == expectedSingles;
+                same &= board.frontierSize() == countFrontier(board);
+                if (!same) {
+                    throw new IllegalStateException("Generator disagrees with brute force on\n"
+                            + Utilities.boardToString(new ArrayList<>(board.asList())) + "hand " + hand);
+                }
+                checked++;
+                if (moves.isEmpty()) {
+                    Collections.rotate(deck, -4);
+                    if (random.nextInt(4) == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                Move move = moves.get(random.nextInt(moves.size()));
+                for (PlayedCard c : move.toPlayedCards(null)) {
+                    board.add(c);
+                    deck.remove(c.card);
+                }
+            }
+        }
+        System.out.println("Checked " + checked + " positions against brute force.");
+    }
+}
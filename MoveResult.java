@@ -0,0 +1,77 @@
+package iota;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of evaluating a move against a board: whether it is legal and,
+ * if so, its score and the lengths of the lines it makes.
+ */
+public final class MoveResult {
+
+    public static final MoveResult ILLEGAL = new MoveResult(false, Utilities.ILLEGAL, 0, new int[0], false);
+
+    private final boolean legal;
+    private final int score;
+    private final int mainLine;
+    private final int[] crossLines;
+    private final boolean closedFour;
+
+    MoveResult(boolean legal, int score, int mainLine, int[] crossLines, boolean closedFour) {
+        this.legal = legal;
+        this.score = score;
+        this.mainLine = mainLine;
+        this.crossLines = crossLines;
+        this.closedFour = closedFour;
+    }
+
+    public boolean isLegal() {
+        return legal;
+    }
+
+    /**
+     * The score of the move, not counting the bonus for emptying a hand at
+     * the end of the game.
+     *
+     * @return the score, or Utilities.ILLEGAL if the move is illegal
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * The length of the line along which the cards were played.
+     *
+     * @return the main line length
+     */
+    public int getMainLineLength() {
+        return mainLine;
+    }
+
+    /**
+     * The length of the line crossing the main line at each played card, in
+     * the order the cards were given.
+     *
+     * @param i the index of the played card
+     * @return the cross line length
+     */
+    public int getCrossLineLength(int i) {
+        return crossLines[i];
+    }
+
+    /**
+     * Whether the move completed a line of four cards.
+     *
+     * @return true if some line made by the move has four cards
+     */
+    public boolean closedFour() {
+        return closedFour;
+    }
+
+    public String toString() {
+        if (!legal) {
+            return "illegal";
+        }
+        return score + " (main " + mainLine + ", cross " + Arrays.toString(crossLines)
+                + (closedFour ? ", four" : "") + ")";
+    }
+}
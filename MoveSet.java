@@ -0,0 +1,155 @@
+package iota;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of moves stored as their packed encodings. Membership is checked in an
+ * open-addressing table of long pairs, and the moves are also kept in the
+ * order they were added so iteration is repeatable.
+ */
+public class MoveSet implements Iterable<Move> {
+
+    private long[] tableLo;
+    private long[] tableHi;
+    private int mask;
+
+    private long[] orderLo;
+    private long[] orderHi;
+    private int size;
+
+    public MoveSet() {
+        this(64);
+    }
+
+    public MoveSet(int expected) {
+        int capacity = 16;
+        while (capacity < 2 * expected) {
+            capacity <<= 1;
+        }
+        tableLo = new long[capacity];
+        tableHi = new long[capacity];
+        mask = capacity - 1;
+        orderLo = new long[Math.max(expected, 4)];
+        orderHi = new long[Math.max(expected, 4)];
+    }
+
+    private static int hash(long lo, long hi) {
+        return LongSet.mix(lo * 31 + hi);
+    }
+
+    public boolean add(Move m) {
+        return add(m.lo(), m.hi());
+    }
+
+    /**
+     * Add a move given by its encoding. A move always has a card in its first
+     * slot, so lo is never zero, and zero marks a free entry in the table.
+     *
+     * @param lo the first two slots of the move
+     * @param hi the last two slots of the move
+     * @return true if the move was not already present
+     */
+    public boolean add(long lo, long hi) {
+        int i = hash(lo, hi) & mask;
+        long l;
+        while ((l = tableLo[i]) != 0L) {
+            if (l == lo && tableHi[i] == hi) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        tableLo[i] = lo;
+        tableHi[i] = hi;
+        if (size == orderLo.length) {
+            orderLo = Arrays.copyOf(orderLo, 2 * size);
+            orderHi = Arrays.copyOf(orderHi, 2 * size);
+        }
+        orderLo[size] = lo;
+        orderHi[size] = hi;
+        size++;
+        if (2 * size > tableLo.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Add each of the moves of another set, in order.
+     *
+     * @param other the moves to add
+     */
+    public void addAll(MoveSet other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.orderLo[i], other.orderHi[i]);
+        }
+    }
+
+    public boolean contains(Move m) {
+        int i = hash(m.lo(), m.hi()) & mask;
+        long l;
+        while ((l = tableLo[i]) != 0L) {
+            if (l == m.lo() && tableHi[i] == m.hi()) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    private void grow() {
+        tableLo = new long[tableLo.length << 1];
+        tableHi = new long[tableHi.length << 1];
+        mask = tableLo.length - 1;
+        for (int j = 0; j < size; j++) {
+            int i = hash(orderLo[j], orderHi[j]) & mask;
+            while (tableLo[i] != 0L) {
+                i = (i + 1) & mask;
+            }
+            tableLo[i] = orderLo[j];
+            tableHi[i] = orderHi[j];
+        }
+    }
+
+    /**
+     * The i-th move added.
+     *
+     * @param i the index
+     * @return the move
+     */
+    public Move get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+        }
+        return Move.fromBits(orderLo[i], orderHi[i]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Move> iterator() {
+        return new Iterator<Move>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Move next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+}
@@ -10,8 +10,8 @@ import java.util.Objects;
  */
 public class PlayedCard {
 
-    Card card;
-    Player p;
+    final Card card;
+    final Player p;
     public final int x;
     public final int y;
     static final int SIZE = 60;
@@ -66,15 +66,19 @@ public class PlayedCard {
 
 
     public void drawCard(Graphics g, int offset) {
-        int x = getActual(this.x, offset);
-        int y = getActual(this.y, offset);
+        drawCard(g, offset, offset);
+    }
+
+    public void drawCard(Graphics g, int xOffset, int yOffset) {
+        int x = getActual(this.x, xOffset);
+        int y = getActual(this.y, yOffset);
         drawBackground(g, x, y);
         drawColorShape(g, x, y);
         drawPips(g, x, y);
     }
 
     public Card getCard() {
-        return new Card(this.card.getColour(), this.card.getShape(), this.card.getValue());
+        return card;
     }
 
     private void drawPips(Graphics g, int actualx, int actualy) {
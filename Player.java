@@ -9,6 +9,13 @@ import java.util.ArrayList;
  */
 public abstract class Player {
 
+    /**
+     * A shared empty move. Every player in every game returns the same list,
+     * so any change to it would affect them all.
+     *
+     * @deprecated return {@link #pass()} instead
+     */
+    @Deprecated
     protected final static ArrayList<PlayedCard> PASS = new ArrayList<PlayedCard>();
     protected final Manager m;
 
@@ -16,6 +23,16 @@ public abstract class Player {
         this.m = m;
     }
 
+    /**
+     * An empty move, which asks the manager for a discard. Each call returns
+     * a new list, so games running at the same time share nothing.
+     *
+     * @return an empty move
+     */
+    protected static ArrayList<PlayedCard> pass() {
+        return new ArrayList<PlayedCard>();
+    }
+
     /**
      * Make a move as requested by the manager. Note that as a player you
      * will be able to query the manager about the current state of the board
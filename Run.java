@@ -0,0 +1,95 @@
+package iota;
+
+/**
+ * A summary of a maximal run of cards in a row or column of a board: where it
+ * starts, how many cards it has, the sum of their values and their colour,
+ * shape and value masks. Runs are immutable; placing a card next to a run
+ * makes a new one.
+ */
+public final class Run {
+
+    public final int x;
+    public final int y;
+    public final boolean horizontal;
+    public final int length;
+    public final int sum;
+    public final int colours;
+    public final int shapes;
+    public final int values;
+
+    private Run(int x, int y, boolean horizontal, int length, int sum, int colours, int shapes, int values) {
+        this.x = x;
+        this.y = y;
+        this.horizontal = horizontal;
+        this.length = length;
+        this.sum = sum;
+        this.colours = colours;
+        this.shapes = shapes;
+        this.values = values;
+    }
+
+    /**
+     * The run made by placing a card between two runs, either of which may be
+     * null if there is no card on that side.
+     *
+     * @param before the run ending just before the card
+     * @param card the card placed
+     * @param after the run starting just after the card
+     * @param horizontal whether the runs are in a row
+     * @return the joined run
+     */
+    static Run join(Run before, PlayedCard card, Run after, boolean horizontal) {
+        return join(before, card.card.id(), card.x, card.y, after, horizontal);
+    }
+
+    /**
+     * The run made by placing the card with the given id at (x,y) between
+     * two runs, either of which may be null.
+     *
+     * @param before the run ending just before the card
+     * @param id the id of the card placed
+     * @param x the x coordinate of the card
+     * @param y the y coordinate of the card
+     * @param after the run starting just after the card
+     * @param horizontal whether the runs are in a row
+     * @return the joined run
+     */
+    static Run join(Run before, int id, int x, int y, Run after, boolean horizontal) {
+        int length = 1;
+        int sum = Card.fromId(id).value;
+        int colours = Utilities.colourBit(id);
+        int shapes = Utilities.shapeBit(id);
+        int values = Utilities.valueBit(id);
+        if (before != null) {
+            x = before.x;
+            y = before.y;
+            length += before.length;
+            sum += before.sum;
+            colours |= before.colours;
+            shapes |= before.shapes;
+            values |= before.values;
+        }
+        if (after != null) {
+            length += after.length;
+            sum += after.sum;
+            colours |= after.colours;
+            shapes |= after.shapes;
+            values |= after.values;
+        }
+        return new Run(x, y, horizontal, length, sum, colours, shapes, values);
+    }
+
+    /**
+     * Whether the cards of the run form a proper line.
+     *
+     * @return true if the run is a set of at most four cards
+     */
+    public boolean isSet() {
+        return LineTable.isSet(length, colours, shapes, values);
+    }
+
+    @Override
+    public String toString() {
+        return (horizontal ? "row" : "column") + " run of " + length + " from (" + x + "," + y + ") worth " + sum;
+    }
+}
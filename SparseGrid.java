@@ -0,0 +1,88 @@
+package iota;
+
+import java.util.HashMap;
+
+/**
+ * An unbounded two dimensional grid which allocates square tiles of cells
+ * only when something is stored in them, so memory grows with the number of
+ * occupied cells rather than with the bounding box of the board.
+ *
+ * @param <T> the type of the cell contents
+ */
+public class SparseGrid<T> {
+
+    private static final int TILE_BITS = 4;
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final HashMap<Long, Object[]> tiles = new HashMap<>();
+
+    // Most accesses are close to the previous one, so remember the last tile.
+    // The key and tile are kept together so that threads reading the grid at
+    // the same time never see the key of one tile with another.
+    private Cached last;
+
+    private static final class Cached {
+        final long key;
+        final Object[] tile;
+
+        Cached(long key, Object[] tile) {
+            this.key = key;
+            this.tile = tile;
+        }
+    }
+
+    private Object[] tile(int x, int y, boolean create) {
+        long key = Board.pack(x >> TILE_BITS, y >> TILE_BITS);
+        Cached c = last;
+        if (c != null && c.key == key) {
+            return c.tile;
+        }
+        Object[] t = tiles.get(key);
+        if (t == null) {
+            if (!create) {
+                return null;
+            }
+            t = new Object[TILE_SIZE * TILE_SIZE];
+            tiles.put(key, t);
+        }
+        last = new Cached(key, t);
+        return t;
+    }
+
+    private static int offset(int x, int y) {
+        return ((y & TILE_MASK) << TILE_BITS) | (x & TILE_MASK);
+    }
+
+    /**
+     * Return the contents of a cell.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the contents of (x,y) or null if nothing is stored there
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int x, int y) {
+        Object[] t = tile(x, y, false);
+        return t == null ? null : (T) t[offset(x, y)];
+    }
+
+    public void put(int x, int y, T value) {
+        tile(x, y, true)[offset(x, y)] = value;
+    }
+
+    /**
+     * The number of tiles allocated so far.
+     *
+     * @return the tile count
+     */
+    public int tileCount() {
+        return tiles.size();
+    }
+
+    public void clear() {
+        tiles.clear();
+        last = null;
+    }
+
+}
@@ -13,6 +13,11 @@ public class Spot{
     int x;
     int y;
 
+	// masks of the card ids which would make a set with the cards beside
+	// this spot in its row and in its column.
+	long rowCards = -1L;
+	long columnCards = -1L;
+
 	public Spot(int x, int y) {
 		this.x = x;
 		this.y = y;
@@ -33,13 +38,20 @@ public class Spot{
 		return this.pCard == null;
 	}
 
+	/**
+	* The cards which could be placed here given its row and column.
+	*/
+	public long legalCards() {
+		return rowCards & columnCards;
+	}
+
 	public ArrayList<Spot> getNeighbours() {
 
 		ArrayList<Spot> neighbours = new ArrayList<Spot>();
-		if (n.isEmpty()) neighbours.add(n);
-		if (s.isEmpty()) neighbours.add(s);
-		if (e.isEmpty()) neighbours.add(e);
-		if (w.isEmpty()) neighbours.add(w);
+		if (n != null && n.isEmpty()) neighbours.add(n);
+		if (s != null && s.isEmpty()) neighbours.add(s);
+		if (e != null && e.isEmpty()) neighbours.add(e);
+		if (w != null && w.isEmpty()) neighbours.add(w);
 		return neighbours;
 
 	}
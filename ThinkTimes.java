@@ -0,0 +1,134 @@
+package iota;
+
+/**
+ * A histogram of how long a player took over its turns. Times are counted in
+ * buckets that split each power of two of nanoseconds into eight, so a
+ * percentile is known to within an eighth, while a histogram takes the same
+ * space however many turns it holds. Histograms can be merged, so those of
+ * many games can be summed into one.
+ */
+public final class ThinkTimes {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final long[] counts = new long[64 << SUB_BITS];
+    private long turns;
+    private long timeouts;
+    private long total;
+    private long max;
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB) {
+            return (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        return (exp - SUB_BITS + 1) << SUB_BITS | (int) (nanos >>> (exp - SUB_BITS)) & (SUB - 1);
+    }
+
+    // The largest time that falls in the given bucket.
+    private static long highest(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long lowest = (long) (SUB | bucket & (SUB - 1)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a turn.
+     *
+     * @param nanos how long the player took
+     * @param timedOut whether the player ran out of time
+     */
+    public synchronized void record(long nanos, boolean timedOut) {
+        nanos = Math.max(0, nanos);
+        counts[bucket(nanos)]++;
+        turns++;
+        total += nanos;
+        max = Math.max(max, nanos);
+        if (timedOut) {
+            timeouts++;
+        }
+    }
+
+    /**
+     * Add the turns of another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void addAll(ThinkTimes other) {
+        long[] otherCounts;
+        long otherTurns, otherTimeouts, otherTotal, otherMax;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherTurns = other.turns;
+            otherTimeouts = other.timeouts;
+            otherTotal = other.total;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+            turns += otherTurns;
+            timeouts += otherTimeouts;
+            total += otherTotal;
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    public synchronized long turns() {
+        return turns;
+    }
+
+    public synchronized long timeouts() {
+        return timeouts;
+    }
+
+    /**
+     * The total time taken over all the turns.
+     *
+     * @return the time in nanoseconds
+     */
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized long max() {
+        return max;
+    }
+
+    public synchronized double mean() {
+        return turns == 0 ? 0.0 : (double) total / turns;
+    }
+
+    /**
+     * The time within which the given fraction of turns were taken, rounded
+     * up to the top of its bucket.
+     *
+     * @param fraction the fraction of turns, between 0 and 1
+     * @return the time in nanoseconds, or 0 if there have been no turns
+     */
+    public synchronized long percentile(double fraction) {
+        if (turns == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * turns));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d turns, think p50 %.2f ms p99 %.2f ms max %.2f ms, %d timeouts",
+                turns, percentile(0.5) / 1e6, percentile(0.99) / 1e6, max / 1e6, timeouts);
+    }
+}
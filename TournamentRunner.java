@@ -0,0 +1,322 @@
+package iota;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a tournament of Iota games without a display. Each game has its own
+ * manager and its own players, made fresh by the factories given, so games
+ * can be played on as many threads as wanted without sharing any state.
+ * <p>
+ * The seed of each game is worked out from a master seed and the index of
+ * the game, so a tournament with the same master seed plays the same games
+ * whatever the number of threads.
+ * <p>
+ * From the command line the arguments are the number of games, the number of
+ * threads, the master seed and then the players, each one of falvey, derrick
+ * or dave.
+ */
+public class TournamentRunner {
+
+    /**
+     * Makes a player for a game.
+     */
+    public interface PlayerFactory {
+
+        /**
+         * Make a new player for the game run by the given manager.
+         *
+         * @param m the manager
+         * @param seed a seed for anything random the player does, worked
+         * out from the seed of the game
+         * @return the player
+         */
+        Player create(Manager m, long seed);
+    }
+
+    // Mixed into the seed of a game to seed its players, so that they do not
+    // draw the same numbers as the manager.
+    private static final long PLAYER_SALT = 0xD1B54A32D192ED03L;
+
+    // The memory given to the table of positions shared by players from main.
+    private static final long TABLE_BYTES = 16L << 20;
+
+    private final List<PlayerFactory> factories;
+    private final long masterSeed;
+    private long moveBudget = 0L;
+    private long gameBudget = 0L;
+    private GameRecordFile records;
+
+    public TournamentRunner(List<PlayerFactory> factories) {
+        this(factories, new SplittableRandom().nextLong());
+    }
+
+    public TournamentRunner(List<PlayerFactory> factories, long masterSeed) {
+        if (factories.size() < 2) {
+            throw new IllegalArgumentException("A game needs at least two players: " + factories.size());
+        }
+        this.factories = new ArrayList<>(factories);
+        this.masterSeed = masterSeed;
+    }
+
+    /**
+     * Limit the time players may think in every game, as for
+     * {@link Manager#setMoveBudget} and {@link Manager#setGameBudget}.
+     *
+     * @param perMove the time allowed per turn, or 0 for no limit
+     * @param perGame the time allowed per game, or 0 for no limit
+     * @param unit the unit of the times
+     */
+    public void setBudgets(long perMove, long perGame, TimeUnit unit) {
+        moveBudget = unit.toNanos(perMove);
+        gameBudget = unit.toNanos(perGame);
+    }
+
+    /**
+     * Record every game played from now on in the given file.
+     *
+     * @param records the file, or null to record nothing
+     */
+    public void setRecordFile(GameRecordFile records) {
+        this.records = records;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    /**
+     * The seed of a game of a tournament.
+     *
+     * @param masterSeed the seed of the tournament
+     * @param game the index of the game
+     * @return the seed of the game
+     */
+    public static long gameSeed(long masterSeed, int game) {
+        return new SplittableRandom(masterSeed ^ (0x9E3779B97F4A7C15L * (game + 1))).nextLong();
+    }
+
+    /**
+     * Play one game with new players.
+     *
+     * @param game the index of the game
+     * @return the result
+     */
+    public GameResult playGame(int game) {
+        return playGame(game, GameLog.silent(), null);
+    }
+
+    private GameResult playGame(int game, GameLog log, ThinkTimes[] times) {
+        long seed = gameSeed(masterSeed, game);
+        Manager m = new Manager(seed);
+        m.setLog(log);
+        m.setMoveBudget(moveBudget, TimeUnit.NANOSECONDS);
+        m.setGameBudget(gameBudget, TimeUnit.NANOSECONDS);
+        if (records != null) {
+            m.addListener(new GameRecorder(records));
+        }
+        Player[] players = new Player[factories.size()];
+        String[] names = new String[players.length];
+        SplittableRandom playerSeeds = new SplittableRandom(seed ^ PLAYER_SALT);
+        for (int i = 0; i < players.length; i++) {
+            players[i] = factories.get(i).create(m, playerSeeds.nextLong());
+            names[i] = players[i].getName();
+        }
+        m.addPlayers(players);
+        m.play();
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++) {
+            scores[i] = m.getRawScore(players[i]);
+            if (times != null) {
+                times[i].addAll(m.getThinkTimes(players[i]));
+            }
+        }
+        return new GameResult(game, seed, names, scores);
+    }
+
+    /**
+     * Play a number of games over a pool of threads. Nothing is written
+     * while they are played, but the events of all the games are counted and
+     * the time each entrant takes over its turns is recorded.
+     *
+     * @param games the number of games
+     * @param threads the number of threads
+     * @return the results of all the games
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public Results run(int games, int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        GameLog log = GameLog.silent();
+        ThinkTimes[] times = new ThinkTimes[factories.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = new ThinkTimes();
+        }
+        try {
+            List<Future<GameResult>> futures = new ArrayList<>(games);
+            for (int g = 0; g < games; g++) {
+                final int game = g;
+                futures.add(pool.submit(() -> playGame(game, log, times)));
+            }
+            List<GameResult> results = new ArrayList<>(games);
+            for (Future<GameResult> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A game failed", e.getCause());
+                }
+            }
+            return new Results(results, System.nanoTime() - start, log.counts(), times);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The results of a tournament, with the wins, the spread of scores and
+     * the think times of each entrant.
+     */
+    public static final class Results {
+
+        private final List<GameResult> games;
+        private final long nanos;
+        private final String[] names;
+        private final int[] wins;
+        private final int[] minimum;
+        private final int[] maximum;
+        private final long[] total;
+        private final List<TreeMap<Integer, Integer>> distribution = new ArrayList<>();
+        private final Map<GameLog.Event, Long> events;
+        private final ThinkTimes[] times;
+
+        Results(List<GameResult> games, long nanos, Map<GameLog.Event, Long> events, ThinkTimes[] times) {
+            this.games = games;
+            this.nanos = nanos;
+            this.events = events;
+            this.times = times;
+            int n = games.isEmpty() ? 0 : games.get(0).getEntrants();
+            names = new String[n];
+            wins = new int[n];
+            minimum = new int[n];
+            maximum = new int[n];
+            total = new long[n];
+            Arrays.fill(minimum, Integer.MAX_VALUE);
+            Arrays.fill(maximum, Integer.MIN_VALUE);
+            for (int i = 0; i < n; i++) {
+                names[i] = games.get(0).getName(i);
+                distribution.add(new TreeMap<>());
+            }
+            for (GameResult r : games) {
+                for (int i = 0; i < n; i++) {
+                    int score = r.getScore(i);
+                    wins[i] += r.isWinner(i) ? 1 : 0;
+                    minimum[i] = Math.min(minimum[i], score);
+                    maximum[i] = Math.max(maximum[i], score);
+                    total[i] += score;
+                    distribution.get(i).merge(score, 1, Integer::sum);
+                }
+            }
+        }
+
+        public List<GameResult> getGames() {
+            return games;
+        }
+
+        public int getWins(int entrant) {
+            return wins[entrant];
+        }
+
+        public double getMeanScore(int entrant) {
+            return games.isEmpty() ? 0.0 : (double) total[entrant] / games.size();
+        }
+
+        /**
+         * How many games the entrant finished with each score.
+         *
+         * @param entrant the index of the entrant
+         * @return the number of games for each score, in order of score
+         */
+        public Map<Integer, Integer> getScoreDistribution(int entrant) {
+            return distribution.get(entrant);
+        }
+
+        /**
+         * How many times each kind of event happened over all the games.
+         *
+         * @return the counts of the events that happened at least once
+         */
+        public Map<GameLog.Event, Long> getEventCounts() {
+            return events;
+        }
+
+        /**
+         * How long the entrant took over its turns in all the games.
+         *
+         * @param entrant the index of the entrant
+         * @return the think times
+         */
+        public ThinkTimes getThinkTimes(int entrant) {
+            return times[entrant];
+        }
+
+        public double gamesPerSecond() {
+            return nanos == 0 ? 0.0 : games.size() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                sb.append(String.format("%-10s wins %5d  score mean %6.1f  min %4d  max %4d%n",
+                        names[i], wins[i], getMeanScore(i), minimum[i], maximum[i]));
+                sb.append(String.format("%-10s %s%n", "", times[i]));
+            }
+            sb.append("events ").append(events).append(System.lineSeparator());
+            sb.append(String.format("%d games in %.2f s, %.1f games/s%n",
+                    games.size(), nanos / 1e9, gamesPerSecond()));
+            return sb.toString();
+        }
+    }
+
+    private static PlayerFactory factory(String kind, int entrant, TranspositionTable table) {
+        final String name = kind + " " + (entrant + 1);
+        switch (kind.toLowerCase()) {
+            case "falvey":
+                return (m, seed) -> new FalveyPlayer(m, name, table);
+            case "derrick":
+                return (m, seed) -> new Derrick(m, name, seed);
+            case "dave":
+                return (m, seed) -> new Dave(m, name);
+            default:
+                throw new IllegalArgumentException("Unknown player: " + kind);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : new SplittableRandom().nextLong();
+        List<String> kinds = args.length > 3
+                ? Arrays.asList(args).subList(3, args.length)
+                : Arrays.asList("falvey", "derrick", "dave");
+        // The falvey players of every game share one table of positions.
+        TranspositionTable table = new TranspositionTable(TABLE_BYTES);
+        List<PlayerFactory> factories = new ArrayList<>();
+        for (int i = 0; i < kinds.size(); i++) {
+            factories.add(factory(kinds.get(i), i, table));
+        }
+        Results results = new TournamentRunner(factories, seed).run(games, threads);
+        System.out.println("master seed " + seed);
+        System.out.print(results);
+        System.out.println("positions " + table);
+    }
+}
@@ -0,0 +1,277 @@
+package iota;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of search results keyed on a 64-bit position hash such
+ * as {@link Manager#getPositionKey()}, so that a search reaching the same
+ * position by different orders of moves only evaluates it once.
+ * <p>
+ * The table can be shared between threads without locking. Each entry is
+ * four words: the key exclusive-ored with the other three, the two words of
+ * the best move, and a word packing the score, depth, bound and age. A
+ * reader recomputes the key from the four words it sees, so an entry torn by
+ * a concurrent write simply fails to match and counts as a miss.
+ * <p>
+ * Entries come in buckets of two. A store replaces the entry for the same
+ * key if there is one, and otherwise the entry left by an older search or,
+ * failing that, the one searched to the lesser depth.
+ */
+public class TranspositionTable {
+
+    /**
+     * How the stored score relates to the true value of the position.
+     */
+    public enum Bound {
+        EXACT, LOWER, UPPER
+    }
+
+    /**
+     * A result read back from the table.
+     */
+    public static final class Entry {
+
+        private final long key;
+        private final Move move;
+        private final int score;
+        private final int depth;
+        private final Bound bound;
+
+        private Entry(long key, Move move, int score, int depth, Bound bound) {
+            this.key = key;
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.bound = bound;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * The best move found from the position.
+         *
+         * @return the move, or null if none was stored
+         */
+        public Move getMove() {
+            return move;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public Bound getBound() {
+            return bound;
+        }
+    }
+
+    private static final int WORDS = 4;
+    private static final int BUCKET = 2;
+    private static final int ENTRY_BYTES = WORDS * Long.BYTES;
+    public static final int MAX_DEPTH = 255;
+
+    // Layout of the data word. The top bit marks the entry as used, so an
+    // empty entry never matches a key of zero.
+    private static final long USED = 1L << 63;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int AGE_SHIFT = 42;
+
+    private final AtomicLongArray table;
+    private final int bucketMask;
+    private volatile int age;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Make a table using at most the given number of bytes for its entries.
+     *
+     * @param budget the memory budget in bytes
+     */
+    public TranspositionTable(long budget) {
+        long buckets = Math.max(1, budget / (BUCKET * ENTRY_BYTES));
+        // Round down to a power of two so the bucket is a mask of the key.
+        buckets = Long.highestOneBit(Math.min(buckets, Integer.MAX_VALUE / (BUCKET * WORDS)));
+        table = new AtomicLongArray((int) buckets * BUCKET * WORDS);
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * The number of entries the table can hold.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return table.length() / WORDS;
+    }
+
+    /**
+     * Start a new search. Entries stored before are kept, but are the first to
+     * be replaced.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0L);
+        }
+    }
+
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & bucketMask;
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key the position hash
+     * @return the stored result, or null if there is none
+     */
+    public Entry probe(long key) {
+        int base = bucket(key) * BUCKET * WORDS;
+        boolean occupied = false;
+        for (int e = 0; e < BUCKET; e++) {
+            int i = base + e * WORDS;
+            long check = table.get(i);
+            long lo = table.get(i + 1);
+            long hi = table.get(i + 2);
+            long data = table.get(i + 3);
+            if ((data & USED) == 0) {
+                continue;
+            }
+            if ((check ^ lo ^ hi ^ data) == key) {
+                hits.increment();
+                Move move = lo == 0L ? null : Move.fromBits(lo, hi);
+                return new Entry(key, move, (int) data, (int) (data >>> DEPTH_SHIFT) & 0xFF,
+                        Bound.values()[(int) (data >>> BOUND_SHIFT) & 3]);
+            }
+            occupied = true;
+        }
+        misses.increment();
+        if (occupied) {
+            collisions.increment();
+        }
+        return null;
+    }
+
+    /**
+     * Store the result of searching a position.
+     *
+     * @param key the position hash
+     * @param move the best move found, or null
+     * @param score the score
+     * @param depth the depth searched, between 0 and MAX_DEPTH
+     * @param bound how the score relates to the true value
+     */
+    public void store(long key, Move move, int score, int depth, Bound bound) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be between 0 and " + MAX_DEPTH + ": " + depth);
+        }
+        long lo = move == null ? 0L : move.lo();
+        long hi = move == null ? 0L : move.hi();
+        int currentAge = age;
+        long data = USED | (long) currentAge << AGE_SHIFT | (long) bound.ordinal() << BOUND_SHIFT
+                | (long) depth << DEPTH_SHIFT | (score & 0xFFFFFFFFL);
+
+        int base = bucket(key) * BUCKET * WORDS;
+        int victim = base;
+        int victimRank = Integer.MAX_VALUE;
+        boolean same = false;
+        for (int e = 0; e < BUCKET; e++) {
+            int i = base + e * WORDS;
+            long old = table.get(i + 3);
+            if ((old & USED) == 0) {
+                // Take the first empty entry, but keep looking for the key.
+                if (victimRank >= 0) {
+                    victim = i;
+                    victimRank = -1;
+                }
+                continue;
+            }
+            if ((table.get(i) ^ table.get(i + 1) ^ table.get(i + 2) ^ old) == key) {
+                victim = i;
+                same = true;
+                break;
+            }
+            // Entries from older searches go first, then shallower ones.
+            int oldAge = (int) (old >>> AGE_SHIFT) & 0xFF;
+            int rank = (oldAge == currentAge ? MAX_DEPTH + 1 : 0) + ((int) (old >>> DEPTH_SHIFT) & 0xFF);
+            if (rank < victimRank) {
+                victim = i;
+                victimRank = rank;
+            }
+        }
+        if (!same && victimRank >= 0) {
+            evictions.increment();
+        }
+        table.set(victim, key ^ lo ^ hi ^ data);
+        table.set(victim + 1, lo);
+        table.set(victim + 2, hi);
+        table.set(victim + 3, data);
+        stores.increment();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of misses where the bucket held results for other positions.
+     *
+     * @return the number of collisions
+     */
+    public long collisions() {
+        return collisions.sum();
+    }
+
+    public long stores() {
+        return stores.sum();
+    }
+
+    /**
+     * The number of stores that replaced a result for another position.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long probes = hits() + misses();
+        return probes == 0 ? 0.0 : (double) hits() / probes;
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        collisions.reset();
+        stores.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        long probes = hits() + misses();
+        return String.format("%d entries, %d probes, hit %.1f%%, collision %.1f%%, %d stores, %d evictions",
+                capacity(), probes, 100 * hitRate(), probes == 0 ? 0.0 : 100.0 * collisions() / probes,
+                stores(), evictions());
+    }
+}
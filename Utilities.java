@@ -1,7 +1,7 @@
 package iota;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
  * Utility methods available to Iota players and managers
@@ -12,6 +12,24 @@ public class Utilities {
 
     public static final int ILLEGAL = -1;
 
+    /**
+     * The colour of a card id as a one bit attribute mask.
+     *
+     * @param id the card id
+     * @return the colour mask
+     */
+    static int colourBit(int id) {
+        return 1 << (id >> 4);
+    }
+
+    static int shapeBit(int id) {
+        return 1 << ((id >> 2) & 3);
+    }
+
+    static int valueBit(int id) {
+        return 1 << (id & 3);
+    }
+
     /**
      * Checks if the cards supplied form a proper line. Note there is no
      * checking against a board.
@@ -29,6 +47,26 @@ public class Utilities {
         return inLine(cards) && formSet(cards);
     }
 
+    /**
+     * Checks if the first count cards, given by position and id, form a
+     * proper line.
+     *
+     * @param xs the x coordinates
+     * @param ys the y coordinates
+     * @param ids the card ids
+     * @param count the number of cards
+     * @return true if the cards form a line
+     */
+    static boolean properLine(int[] xs, int[] ys, int[] ids, int count) {
+        if (count <= 2) {
+            return true;
+        }
+        if (count > 4) {
+            return false;
+        }
+        return inLine(xs, ys, count) && formSet(ids, count);
+    }
+
     /**
      * Checks if the cards supplied are in a line (note no checking against a
      * board)
@@ -37,27 +75,76 @@ public class Utilities {
      * @return true if the cards are in a horizontal or vertical line.
      */
     static boolean inLine(ArrayList<PlayedCard> cards) {
-        int xMin = Integer.MAX_VALUE;
-        int xMax = Integer.MIN_VALUE;
-        int yMin = Integer.MAX_VALUE;
-        int yMax = Integer.MIN_VALUE;
-        HashSet<Integer> xValues = new HashSet<>();
-        HashSet<Integer> yValues = new HashSet<>();
+        int n = cards.size();
+        if (n == 0) {
+            return false;
+        }
+        int x0 = cards.get(0).x;
+        int y0 = cards.get(0).y;
+        boolean sameX = true;
+        boolean sameY = true;
+        for (int i = 1; i < n; i++) {
+            sameX &= cards.get(i).x == x0;
+            sameY &= cards.get(i).y == y0;
+        }
+        if (sameX == sameY) {
+            // Either scattered, or several cards on one spot.
+            return n == 1;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
         for (PlayedCard c : cards) {
-            xMin = Math.min(c.x, xMin);
-            yMin = Math.min(c.y, yMin);
-            xMax = Math.max(c.x, xMax);
-            yMax = Math.max(c.y, yMax);
-            xValues.add(c.x);
-            yValues.add(c.y);
+            int v = sameX ? c.y : c.x;
+            min = Math.min(v, min);
+            max = Math.max(v, max);
         }
-        if (xValues.size() == 1) {
-            return yValues.size() == cards.size() && yMax - yMin == cards.size() - 1;
+        if (max - min != n - 1) {
+            return false;
         }
-        if (yValues.size() == 1) {
-            return xValues.size() == cards.size() && xMax - xMin == cards.size() - 1;
+        if (n > 64) {
+            // Too long for a mask, and far too long for any Iota line.
+            return false;
         }
-        return false;
+        long seen = 0L;
+        for (PlayedCard c : cards) {
+            seen |= 1L << ((sameX ? c.y : c.x) - min);
+        }
+        return Long.bitCount(seen) == n;
+    }
+
+    /**
+     * Checks if the first count positions are in a line with no gaps or
+     * repeats.
+     *
+     * @param xs the x coordinates
+     * @param ys the y coordinates
+     * @param count the number of positions
+     * @return true if the positions are in a horizontal or vertical line.
+     */
+    static boolean inLine(int[] xs, int[] ys, int count) {
+        if (count == 0) {
+            return false;
+        }
+        boolean sameX = inCol(xs, count);
+        boolean sameY = inRow(ys, count);
+        if (sameX == sameY) {
+            return count == 1;
+        }
+        int[] vs = sameX ? ys : xs;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(vs[i], min);
+            max = Math.max(vs[i], max);
+        }
+        if (max - min != count - 1 || count > 64) {
+            return false;
+        }
+        long seen = 0L;
+        for (int i = 0; i < count; i++) {
+            seen |= 1L << (vs[i] - min);
+        }
+        return Long.bitCount(seen) == count;
     }
 
     /**
@@ -75,178 +162,300 @@ public class Utilities {
         if (cards.size() > 4) {
             return false;
         }
-        HashSet<Shape> shapes = new HashSet<>();
-        HashSet<Colour> colours = new HashSet<>();
-        HashSet<Integer> values = new HashSet<>();
+        int colours = 0;
+        int shapes = 0;
+        int values = 0;
         for (PlayedCard pc : cards) {
-            colours.add(pc.card.colour);
-            shapes.add(pc.card.shape);
-            values.add(pc.card.value);
+            int id = pc.card.id();
+            colours |= colourBit(id);
+            shapes |= shapeBit(id);
+            values |= valueBit(id);
         }
-        int s = cards.size();
-        return (colours.size() == 1 || colours.size() == s)
-                && (shapes.size() == 1 || shapes.size() == s)
-                && (values.size() == 1 || values.size() == s);
+        return formSet(cards.size(), colours, shapes, values);
+    }
 
+    /**
+     * Checks if the first count card ids form a set.
+     *
+     * @param ids the card ids
+     * @param count the number of cards
+     * @return true if the cards form a set
+     */
+    public static boolean formSet(int[] ids, int count) {
+        if (count <= 2) {
+            return true;
+        }
+        if (count > 4) {
+            return false;
+        }
+        int colours = 0;
+        int shapes = 0;
+        int values = 0;
+        for (int i = 0; i < count; i++) {
+            colours |= colourBit(ids[i]);
+            shapes |= shapeBit(ids[i]);
+            values |= valueBit(ids[i]);
+        }
+        return formSet(count, colours, shapes, values);
     }
 
+    /**
+     * Checks if count cards with the given attribute masks form a set. Each
+     * mask has bit i set when some card has the attribute with ordinal i (or
+     * value i + 1).
+     *
+     * @param count the number of cards
+     * @param colours the colour mask
+     * @param shapes the shape mask
+     * @param values the value mask
+     * @return true if the cards form a set
+     */
+    public static boolean formSet(int count, int colours, int shapes, int values) {
+        return LineTable.isSet(count, colours, shapes, values);
+    }
+
+    /**
+     * Score a move on a board given as a list. The list is indexed afresh on
+     * every call, so a caller that keeps a Board should pass that instead.
+     *
+     * @param cards the cards played
+     * @param board the cards on the board
+     * @return the score, or ILLEGAL if the move is not legal
+     */
     public static int scoreForMove(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
-        if (!isLegalMove(cards, board)) {
-            return ILLEGAL;
-        }
-        return score(cards, board);
+        return evaluate(cards, board).getScore();
+    }
+
+    public static int scoreForMove(ArrayList<PlayedCard> cards, Board board) {
+        return evaluate(cards, board).getScore();
     }
 
     static boolean inRow(ArrayList<PlayedCard> cards) {
-        HashSet<Integer> yv = new HashSet<>();
+        if (cards.isEmpty()) {
+            return false;
+        }
+        int y = cards.get(0).y;
         for (PlayedCard c : cards) {
-            yv.add(c.y);
+            if (c.y != y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean inRow(int[] ys, int count) {
+        for (int i = 1; i < count; i++) {
+            if (ys[i] != ys[0]) {
+                return false;
+            }
         }
-        return yv.size() == 1;
+        return count > 0;
     }
 
     static boolean inCol(ArrayList<PlayedCard> cards) {
-        HashSet<Integer> xv = new HashSet<>();
+        if (cards.isEmpty()) {
+            return false;
+        }
+        int x = cards.get(0).x;
         for (PlayedCard c : cards) {
-            xv.add(c.x);
+            if (c.x != x) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean inCol(int[] xs, int count) {
+        for (int i = 1; i < count; i++) {
+            if (xs[i] != xs[0]) {
+                return false;
+            }
         }
-        return xv.size() == 1;
+        return count > 0;
+    }
+
+    public static boolean isLegalMove(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
+        return evaluate(cards, board).isLegal();
+    }
+
+    public static boolean isLegalMove(ArrayList<PlayedCard> cards, Board board) {
+        return evaluate(cards, board).isLegal();
     }
 
     /**
-     * Compute the score for the play cards on the board. Note this is private
-     * as it is supposed to be called only after the play has been checked for
-     * legality.
+     * Check and score a move on a board given as a list. The list is indexed
+     * afresh on every call, so a caller that keeps a Board should pass that
+     * instead. A board with two cards in one place makes every move illegal.
      *
      * @param cards The cards played
-     * @param oldBoard The board
-     * @return The score of the play
+     * @param board The cards on the board
+     * @return The result of the play, MoveResult.ILLEGAL if it is not legal
      */
-    private static int score(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> oldBoard) {
+    public static MoveResult evaluate(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
+        Board b = Board.ofDistinct(board);
+        return b == null ? MoveResult.ILLEGAL : evaluate(cards, b);
+    }
 
-        int sum = 0;
-        int multiplier = 1;
-        if (cards.size() == 4) {
-            multiplier *= 2;
+    /**
+     * Check the legality of a move on the board and, if legal, score it.
+     *
+     * @param move The move
+     * @param board The board
+     * @return The result of the play, MoveResult.ILLEGAL if it is not legal
+     */
+    public static MoveResult evaluate(Move move, Board board) {
+        int n = move.size();
+        int[] ids = new int[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = move.cardId(i);
+            xs[i] = move.x(i);
+            ys[i] = move.y(i);
         }
+        return evaluate(ids, xs, ys, n, board);
+    }
 
-        ArrayList<PlayedCard> board = (ArrayList<PlayedCard>) oldBoard.clone();
-        board.addAll(cards);
-
-        if (inRow(cards)) {
-            ArrayList<PlayedCard> mainLine = horizontalBlock(cards.get(0), board);
-            if (mainLine.size() == 4) {
-                multiplier *= 2;
-            }
-            if (mainLine.size() > 1) {
-                for (PlayedCard c : mainLine) {
-                    sum += c.card.value;
-                }
-            }
-            for (PlayedCard p : cards) {
-                ArrayList<PlayedCard> vertLine = verticalBlock(p, board);
-                if (vertLine.size() > 1) {
-                    if (vertLine.size() == 4) {
-                        multiplier *= 2;
-                    }
-                    for (PlayedCard c : vertLine) {
-                        sum += c.card.value;
-                    }
-                }
-            }
-            return sum * multiplier;
-        } else {
-            ArrayList<PlayedCard> mainLine = verticalBlock(cards.get(0), board);
-            if (mainLine.size() == 4) {
-                multiplier *= 2;
-            }
-            if (mainLine.size() > 1) {
-                for (PlayedCard c : mainLine) {
-                    sum += c.card.value;
-                }
-            }
-            for (PlayedCard p : cards) {
-                ArrayList<PlayedCard> horiLine = horizontalBlock(p, board);
-                if (horiLine.size() > 1) {
-                    if (horiLine.size() == 4) {
-                        multiplier *= 2;
-                    }
-                    for (PlayedCard c : horiLine) {
-                        sum += c.card.value;
-                    }
-                }
-            }
-            return sum * multiplier;
+    public static MoveResult evaluate(ArrayList<PlayedCard> cards, Board board) {
+        int n = cards.size();
+        int[] ids = new int[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            PlayedCard c = cards.get(i);
+            ids[i] = c.card.id();
+            xs[i] = c.x;
+            ys[i] = c.y;
         }
+        return evaluate(ids, xs, ys, n, board);
     }
 
-    public static boolean isLegalMove(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
+    /**
+     * Check the legality of playing the cards on the board and, if legal,
+     * score the play. Each line the play makes is found once and used both
+     * for the legality check and for the score.
+     *
+     * @param ids The ids of the cards played
+     * @param xs Their x coordinates
+     * @param ys Their y coordinates
+     * @param n The number of cards played
+     * @param board The board
+     * @return The result of the play, MoveResult.ILLEGAL if it is not legal
+     */
+    private static MoveResult evaluate(int[] ids, int[] xs, int[] ys, int n, Board board) {
 
         // First check that there are no duplicated locations or cards between
         // the cards and the board, or among the cards.
-        for (int i = 0; i < cards.size(); i++) {
-            PlayedCard ci = cards.get(i);
-            for (int j = i + 1; j < cards.size(); j++) {
-                PlayedCard cj = cards.get(j);
-                if (ci.x == cj.x && ci.y == cj.y || ci.card.equals(cj.card)) {
-                    return false;
+        long cardBits = 0L;
+        for (int i = 0; i < n; i++) {
+            cardBits |= 1L << ids[i];
+            for (int j = i + 1; j < n; j++) {
+                if (xs[i] == xs[j] && ys[i] == ys[j]) {
+                    return MoveResult.ILLEGAL;
                 }
             }
-        }
-
-        for (PlayedCard c : cards) {
-            for (PlayedCard b : board) {
-                if (c.x == b.x && c.y == b.y || c.card.equals(b.card)) {
-                    return false;
-                }
+            if (board.cardAt(xs[i], ys[i]) != null) {
+                return MoveResult.ILLEGAL;
             }
         }
+        if (Long.bitCount(cardBits) != n || (cardBits & board.cardBits()) != 0) {
+            return MoveResult.ILLEGAL;
+        }
 
-        // Add the cards to the board
-        ArrayList<PlayedCard> newBoard = (ArrayList<PlayedCard>) board.clone();
-        newBoard.addAll(cards);
+        boolean horizontal = inRow(ys, n);
+        if (!horizontal && !inCol(xs, n)) {
+            return MoveResult.ILLEGAL;
+        }
 
-        if (inRow(cards)) {
-            ArrayList<PlayedCard> block = horizontalBlock(cards.get(0), newBoard);
-            if (block.size() < cards.size()
-                    || !block.containsAll(cards)
-                    || !formSet(block)) {
-                return false;
-            }
-            if (block.size() == cards.size()) {
-                boolean goodBlock = false;
-                for (PlayedCard c : cards) {
-                    goodBlock |= verticalBlock(c, newBoard).size() > 1;
-                }
-                if (!goodBlock) {
-                    return false;
+        // The main line is made of the cards, the runs of board cards filling
+        // any gaps between them, and the runs touching its two ends.
+        int[] along = new int[n];
+        int count = n;
+        int sum = 0;
+        int colours = 0;
+        int shapes = 0;
+        int values = 0;
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            along[i] = horizontal ? xs[i] : ys[i];
+            sum += Card.fromId(id).value;
+            colours |= colourBit(id);
+            shapes |= shapeBit(id);
+            values |= valueBit(id);
+        }
+        Arrays.sort(along);
+        int x = xs[0];
+        int y = ys[0];
+        Run[] parts = new Run[n + 1];
+        parts[0] = horizontal ? board.rowRun(along[0] - 1, y) : board.columnRun(x, along[0] - 1);
+        for (int i = 1; i < n; i++) {
+            int gap = along[i] - along[i - 1] - 1;
+            if (gap > 0) {
+                parts[i] = horizontal ? board.rowRun(along[i - 1] + 1, y) : board.columnRun(x, along[i - 1] + 1);
+                if (parts[i] == null || parts[i].length != gap) {
+                    return MoveResult.ILLEGAL;
                 }
             }
-
-            return checkCols(cards, newBoard);
+        }
+        parts[n] = horizontal ? board.rowRun(along[n - 1] + 1, y) : board.columnRun(x, along[n - 1] + 1);
+        for (Run r : parts) {
+            if (r != null) {
+                count += r.length;
+                sum += r.sum;
+                colours |= r.colours;
+                shapes |= r.shapes;
+                values |= r.values;
+            }
+        }
+        if (!formSet(count, colours, shapes, values)) {
+            return MoveResult.ILLEGAL;
         }
 
-        if (inCol(cards)) {
-            ArrayList<PlayedCard> block = verticalBlock(cards.get(0), newBoard);
+        int total = 0;
+        int multiplier = 1;
+        boolean closedFour = false;
+        if (n == 4) {
+            multiplier *= 2;
+        }
+        if (count == 4) {
+            multiplier *= 2;
+            closedFour = true;
+        }
+        if (count > 1) {
+            total += sum;
+        }
 
-            if (block.size() < cards.size()
-                    || !block.containsAll(cards)
-                    || !formSet(block)) {
-                return false;
+        // Each card also makes a line across the main line with the runs
+        // either side of it.
+        int[] crossLines = new int[n];
+        boolean touches = count > n;
+        for (int i = 0; i < n; i++) {
+            int cx = xs[i];
+            int cy = ys[i];
+            Run before = horizontal ? board.columnRun(cx, cy - 1) : board.rowRun(cx - 1, cy);
+            Run after = horizontal ? board.columnRun(cx, cy + 1) : board.rowRun(cx + 1, cy);
+            if (before == null && after == null) {
+                crossLines[i] = 1;
+                continue;
             }
-            if (block.size() == cards.size()) {
-                boolean goodBlock = false;
-                for (PlayedCard c : cards) {
-                    goodBlock |= horizontalBlock(c, newBoard).size() > 1;
-                }
-                if (!goodBlock) {
-                    return false;
-                }
+            Run cross = Run.join(before, ids[i], cx, cy, after, !horizontal);
+            if (!cross.isSet()) {
+                return MoveResult.ILLEGAL;
             }
-
-            return checkRows(cards, newBoard);
+            crossLines[i] = cross.length;
+            touches = true;
+            if (cross.length == 4) {
+                multiplier *= 2;
+                closedFour = true;
+            }
+            total += cross.sum;
+        }
+        // The play must join on to some card already on the board.
+        if (!touches) {
+            return MoveResult.ILLEGAL;
         }
-        return false;
+
+        return new MoveResult(true, total * multiplier, count, crossLines, closedFour);
     }
 
     public static PlayedCard cardAt(ArrayList<PlayedCard> board, int x, int y) {
@@ -258,7 +467,15 @@ public class Utilities {
         return null;
     }
 
+    public static PlayedCard cardAt(BoardView board, int x, int y) {
+        return board.cardAt(x, y);
+    }
+
     public static ArrayList<PlayedCard> horizontalBlock(PlayedCard card, ArrayList<PlayedCard> board) {
+        return horizontalBlock(card, (x, y) -> cardAt(board, x, y));
+    }
+
+    public static ArrayList<PlayedCard> horizontalBlock(PlayedCard card, BoardView board) {
         ArrayList<PlayedCard> block = new ArrayList<>();
         block.add(card);
         int x = card.x + 1;
@@ -286,6 +503,10 @@ public class Utilities {
     }
 
     public static ArrayList<PlayedCard> verticalBlock(PlayedCard card, ArrayList<PlayedCard> board) {
+        return verticalBlock(card, (x, y) -> cardAt(board, x, y));
+    }
+
+    public static ArrayList<PlayedCard> verticalBlock(PlayedCard card, BoardView board) {
         ArrayList<PlayedCard> block = new ArrayList<>();
         block.add(card);
         int x = card.x;
@@ -313,7 +534,7 @@ public class Utilities {
     }
 
     // Checks that each row block of a card from cards is a proper line.
-    static boolean checkRows(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
+    static boolean checkRows(ArrayList<PlayedCard> cards, BoardView board) {
         for (PlayedCard c : cards) {
             if (!properLine(horizontalBlock(c, board))) {
                 return false;
@@ -323,7 +544,7 @@ public class Utilities {
     }
 
     // Checks that each column block of a card from cards is a proper line.
-    static boolean checkCols(ArrayList<PlayedCard> cards, ArrayList<PlayedCard> board) {
+    static boolean checkCols(ArrayList<PlayedCard> cards, BoardView board) {
         for (PlayedCard c : cards) {
             if (!properLine(verticalBlock(c, board))) {
                 return false;
@@ -373,17 +594,17 @@ public class Utilities {
     public static void main(String[] args) {
 
         ArrayList<PlayedCard> b = new ArrayList<>();
-        b.add(new PlayedCard(new Card(Colour.BLUE, Shape.CROSS, 1), null, 0, 0));
-//        b.add(new PlayedCard(new Card(Colour.GREEN, Shape.CIRCLE, 2), null, 1, 0));
-//        b.add(new PlayedCard(new Card(Colour.BLUE, Shape.TRIANGLE, 1), null, 1, -1));
-//        b.add(new PlayedCard(new Card(Colour.YELLOW, Shape.SQUARE, 4), null, 1, -2));
+        b.add(new PlayedCard(Card.of(Colour.BLUE, Shape.CROSS, 1), null, 0, 0));
+//        b.add(new PlayedCard(Card.of(Colour.GREEN, Shape.CIRCLE, 2), null, 1, 0));
+//        b.add(new PlayedCard(Card.of(Colour.BLUE, Shape.TRIANGLE, 1), null, 1, -1));
+//        b.add(new PlayedCard(Card.of(Colour.YELLOW, Shape.SQUARE, 4), null, 1, -2));
 //        System.out.println(boardToString(b));
 
         ArrayList<PlayedCard> p = new ArrayList<>();
-        p.add(new PlayedCard(new Card(Colour.GREEN, Shape.CROSS, 2), null, 1, 1));
-//        p.add(new PlayedCard(new Card(Colour.RED, Shape.CROSS, 3), null, 1, 1));
-//        p.add(new PlayedCard(new Card(Colour.YELLOW, Shape.CROSS, 1), null, 2, 1));
-//        p.add(new PlayedCard(new Card(Colour.BLUE, Shape.CROSS, 4), null, 3, 1));
+        p.add(new PlayedCard(Card.of(Colour.GREEN, Shape.CROSS, 2), null, 1, 1));
+//        p.add(new PlayedCard(Card.of(Colour.RED, Shape.CROSS, 3), null, 1, 1));
+//        p.add(new PlayedCard(Card.of(Colour.YELLOW, Shape.CROSS, 1), null, 2, 1));
+//        p.add(new PlayedCard(Card.of(Colour.BLUE, Shape.CROSS, 4), null, 3, 1));
 
         System.out.println(isLegalMove(p, b));
         System.out.println(scoreForMove(p, b));
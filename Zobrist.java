@@ -0,0 +1,127 @@
+package iota;
+
+/**
+ * Zobrist keys for Iota positions. Every card on the board at a position,
+ * every card in a player's hand and every card in the deck has its own
+ * 64-bit key, and a position is keyed by the exclusive or of the keys of its
+ * parts. Adding or removing a card changes the key by a single exclusive or,
+ * so the key of a position can be kept up to date as the game is played and
+ * two positions can be compared in constant time.
+ * <p>
+ * The board is unbounded, so rather than a random table the keys are made by
+ * a fixed mixing function of the card and where it is. They are the same in
+ * every run.
+ */
+public final class Zobrist {
+
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long BOARD = 0x5851F42D4C957F2DL;
+    private static final long HAND = 0x14057B7EF767814FL;
+    private static final long DECK = 0x2545F4914F6CDD1DL;
+    private static final long TO_MOVE = 0x3C6EF372FE94F82BL;
+
+    private static final long[] DECK_KEYS = new long[64];
+
+    static {
+        for (int id = 0; id < 64; id++) {
+            DECK_KEYS[id] = mix(DECK + GAMMA * id);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    // The finalizer of the SplitMix64 generator.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The key of a card on the board.
+     *
+     * @param id the card id
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the key
+     */
+    public static long card(int id, int x, int y) {
+        return mix(mix(BOARD ^ Board.pack(x, y)) + GAMMA * (id + 1));
+    }
+
+    public static long card(PlayedCard c) {
+        return card(c.card.id(), c.x, c.y);
+    }
+
+    /**
+     * The key of a card in the hand of the player in the given seat.
+     *
+     * @param seat the player's position in the order of play
+     * @param id the card id
+     * @return the key
+     */
+    public static long hand(int seat, int id) {
+        return mix(HAND + GAMMA * (64L * seat + id + 1));
+    }
+
+    /**
+     * The key of a set of cards in the hand of the player in the given seat.
+     *
+     * @param seat the player's position in the order of play
+     * @param cardBits the cards, as a card set mask
+     * @return the exclusive or of the keys of the cards
+     */
+    public static long hand(int seat, long cardBits) {
+        long key = 0L;
+        while (cardBits != 0L) {
+            key ^= hand(seat, Long.numberOfTrailingZeros(cardBits));
+            cardBits &= cardBits - 1;
+        }
+        return key;
+    }
+
+    /**
+     * The key of the player in the given seat being the one to move.
+     *
+     * @param seat the player's position in the order of play
+     * @return the key
+     */
+    public static long toMove(int seat) {
+        return mix(TO_MOVE + GAMMA * (seat + 1));
+    }
+
+    public static long deck(int id) {
+        return DECK_KEYS[id];
+    }
+
+    /**
+     * The key of a set of cards in the deck. The order of the deck is not
+     * part of the key.
+     *
+     * @param cardBits the cards, as a card set mask
+     * @return the exclusive or of the keys of the cards
+     */
+    public static long deck(long cardBits) {
+        long key = 0L;
+        while (cardBits != 0L) {
+            key ^= DECK_KEYS[Long.numberOfTrailingZeros(cardBits)];
+            cardBits &= cardBits - 1;
+        }
+        return key;
+    }
+
+    /**
+     * The key of a board, computed from scratch.
+     *
+     * @param cards the cards on the board
+     * @return the exclusive or of the keys of the cards
+     */
+    public static long board(Iterable<PlayedCard> cards) {
+        long key = 0L;
+        for (PlayedCard c : cards) {
+            key ^= card(c);
+        }
+        return key;
+    }
+}